@@ -1,7 +1,7 @@
 import axios from 'axios';
 import type { Chat, Model, Message, ImageContent } from './types';
 
-const API_URL = 'http://localhost:8080/api';
+export const API_URL = 'http://localhost:8080/api';
 
 const api = axios.create({
   baseURL: API_URL,
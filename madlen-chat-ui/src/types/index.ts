@@ -1,8 +1,9 @@
 // Image content for multi-modal messages
 export interface ImageContent {
-  type: "base64" | "url";
-  data: string;           // base64 encoded data (without data URI prefix) or URL
+  type: "base64" | "url" | "ref";
+  data?: string;          // base64 encoded data (without data URI prefix) or URL
   mediaType: string;      // "image/jpeg" | "image/png" | "image/gif" | "image/webp"
+  imageId?: string;       // Stored image hash (for "ref" images returned by the backend)
 }
 
 export interface Message {
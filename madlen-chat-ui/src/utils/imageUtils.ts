@@ -1,4 +1,5 @@
 import type { ImageContent } from '../types';
+import { API_URL } from '../api';
 
 // Allowed image types
 export const ALLOWED_IMAGE_TYPES = ['image/jpeg', 'image/png', 'image/gif', 'image/webp'];
@@ -96,7 +97,10 @@ export const formatFileSize = (bytes: number): string => {
 // Create base64 data URL from ImageContent (for displaying saved images)
 export const imageContentToDataUrl = (image: ImageContent): string => {
   if (image.type === 'url') {
-    return image.data;
+    return image.data ?? '';
+  }
+  if (image.type === 'ref') {
+    return `${API_URL}/images/${image.imageId}`;
   }
   return `data:${image.mediaType};base64,${image.data}`;
 };
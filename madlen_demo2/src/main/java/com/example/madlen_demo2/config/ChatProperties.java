@@ -4,16 +4,168 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "chat")
 public class ChatProperties {
     
     private Session session = new Session();
+    private Storage storage = new Storage();
+    private Images images = new Images();
+    private Execution execution = new Execution();
+    private Admin admin = new Admin();
+    private Context context = new Context();
+    private Summary summary = new Summary();
+    private HotSessions hotSessions = new HotSessions();
+    private Turns turns = new Turns();
+    private Streams streams = new Streams();
+    private RateLimit rateLimit = new RateLimit();
     
     @Data
     public static class Session {
         private int maxPerUser = 10;
         private int maxMessagesPerSession = 100;
+        private int summaryPageSize = 20;
+        private int maxSummaryPageSize = 100;
+        private int messagePageSize = 50;
+        private int maxMessagePageSize = 200;
+    }
+
+    @Data
+    public static class Storage {
+        // Normalize legacy chat_sessions documents so atomic $push appends work on them
+        private boolean migrateOnStartup = true;
+
+        // Create the indexes declared on the documents in the background at startup
+        private boolean ensureIndexes = true;
+    }
+
+    @Data
+    public static class Execution {
+        // Run the blocking /api/chat path on virtual threads instead of holding a Tomcat thread
+        private boolean virtualThreads = true;
+    }
+
+    @Data
+    public static class Images {
+        // "gridfs" (default) or "filesystem"
+        private String store = "gridfs";
+        // Base directory for the filesystem store
+        private String directory = "./data/images";
+        private long maxSizeBytes = 5 * 1024 * 1024;
+        private Preprocessing preprocessing = new Preprocessing();
+    }
+
+    @Data
+    public static class Preprocessing {
+        // Downscale and re-encode stored images before they are sent to a vision model
+        private boolean enabled = true;
+        // Images with more pixels are rejected; even subsampled, decoding them costs too much
+        private long maxPixels = 40_000_000;
+        private String defaultProfile = "standard";
+        private Map<String, ImageProfile> profiles = new HashMap<>(Map.of("standard", new ImageProfile()));
+        // Model id -> profile name, for models that need a different resolution or detail level
+        private Map<String, String> modelProfiles = new HashMap<>();
+    }
+
+    @Data
+    public static class ImageProfile {
+        // Longest edge in pixels after downscaling
+        private int maxEdge = 1568;
+        // JPEG quality between 0.0 and 1.0
+        private float quality = 0.85f;
+        // Detail hint sent to the model: "auto", "low" or "high"
+        private String detail = "auto";
+    }
+
+    @Data
+    public static class Context {
+        // Trim the history sent upstream to a token budget
+        private boolean enabled = true;
+        private int defaultBudgetTokens = 8000;
+        // Model id -> prompt token budget
+        private Map<String, Integer> modelBudgets = new HashMap<>();
+        // Kept free for the reply when the budget is capped by the model's context length
+        private int reservedOutputTokens = 2048;
+        // Always send the first message of the session
+        private boolean keepFirstMessage = true;
+        // Older messages lose their images; text stays
+        private int keepImagesInLastMessages = 2;
+        // Estimated tokens per image at detail "auto"/"high" and at detail "low"
+        private int imageTokens = 765;
+        private int lowDetailImageTokens = 85;
+    }
+
+    @Data
+    public static class Summary {
+        // Condense older turns of long sessions into a stored summary in the background
+        private boolean enabled = true;
+        // Model used for summaries; blank means the session's own model
+        private String model;
+        // Summarize once this many messages are not covered by the summary yet
+        private int triggerMessages = 24;
+        // Most recent messages that are always sent verbatim
+        private int keepRecentMessages = 10;
+        private int maxTokens = 512;
+    }
+
+    @Data
+    public static class HotSessions {
+        // Recently used sessions kept in memory (LRU)
+        private long maxSessions = 10_000;
+        private Duration expireAfterAccess = Duration.ofMinutes(30);
+        // Buffered appends are written once a session has this many...
+        private int flushAfterAppends = 8;
+        // ...or once the oldest of them has waited this long
+        private Duration flushInterval = Duration.ofSeconds(2);
+        // How often sessions are checked against flushInterval; runs on its own thread
+        private Duration sweepInterval = Duration.ofMillis(250);
+    }
+
+    @Data
+    public static class Turns {
+        // How long a message waits for the previous turn of its session
+        private Duration acquireTimeout = Duration.ofSeconds(90);
+        // Re-applies of a buffered append after the session was changed elsewhere
+        private int maxConflictRetries = 3;
+    }
+
+    @Data
+    public static class Streams {
+        // Last chunks of each stream kept for replay on reconnect
+        private int bufferChunks = 2048;
+        // How long a finished stream can still be resumed from memory
+        private Duration retention = Duration.ofMinutes(2);
+        // Cancel the generation once no client has been connected for this long; zero cancels on disconnect.
+        // A grace period keeps generating (and paying for tokens) so a reconnect can continue the reply
+        private Duration abandonAfter = Duration.ZERO;
+        // Write the partial reply to MongoDB at this interval while streaming
+        private boolean checkpoints = true;
+        private Duration checkpointInterval = Duration.ofSeconds(2);
+    }
+
+    @Data
+    public static class RateLimit {
+        // Per-user token buckets for chat requests and estimated tokens
+        private boolean enabled = true;
+        // "memory" (per instance, default) or "mongo" (shared by all instances)
+        private String store = "memory";
+        private int requestsPerMinute = 20;
+        private int requestBurst = 10;
+        private int tokensPerMinute = 40_000;
+        private int tokenBurst = 60_000;
+        // Bounds for the in-memory store; idle buckets are full again and can be dropped
+        private long maxTrackedKeys = 100_000;
+        private Duration idleExpiry = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Admin {
+        // Shared secret for /api/admin endpoints (X-Admin-Token header); admin endpoints are disabled when blank
+        private String token;
     }
 }
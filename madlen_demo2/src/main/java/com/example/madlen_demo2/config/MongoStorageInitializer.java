@@ -0,0 +1,99 @@
+package com.example.madlen_demo2.config;
+
+import com.example.madlen_demo2.model.ChatSession;
+import com.example.madlen_demo2.model.RateLimitBucket;
+import com.example.madlen_demo2.model.StreamCheckpoint;
+import com.example.madlen_demo2.service.GridFsImageStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prepares the MongoDB collections once the application is up.
+ * Runs in the background so a slow or missing database never blocks startup.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MongoStorageInitializer {
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatProperties chatProperties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        CompletableFuture.runAsync(() -> {
+            if (chatProperties.getStorage().isEnsureIndexes()) {
+                ensureIndexes(ChatSession.class);
+                ensureIndexes(StreamCheckpoint.class);
+                if ("mongo".equals(chatProperties.getRateLimit().getStore())) {
+                    ensureIndexes(RateLimitBucket.class);
+                }
+                if ("gridfs".equals(chatProperties.getImages().getStore())) {
+                    ensureImageFilenameIndex();
+                }
+            }
+            if (chatProperties.getStorage().isMigrateOnStartup()) {
+                migrateSessionMessages();
+            }
+        }).exceptionally(e -> {
+            log.warn("MongoDB storage initialization failed: {}", e.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Create the indexes declared on an entity. Spring's auto-index-creation is
+     * left off because it runs synchronously and fails startup without a database.
+     */
+    void ensureIndexes(Class<?> entityClass) {
+        IndexOperations indexOps = mongoTemplate.indexOps(entityClass);
+        new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(entityClass)
+                .forEach(indexOps::ensureIndex);
+        log.debug("Ensured indexes for {}", entityClass.getSimpleName());
+    }
+
+    /**
+     * Images are stored under their content hash. A unique filename lets concurrent
+     * uploads of the same image race safely: the second file document is rejected.
+     */
+    void ensureImageFilenameIndex() {
+        try {
+            mongoTemplate.indexOps(GridFsImageStore.FILES_COLLECTION)
+                    .ensureIndex(new Index("filename", Sort.Direction.ASC).unique().named("filename_unique"));
+            log.debug("Ensured unique filename index for {}", GridFsImageStore.FILES_COLLECTION);
+        } catch (RuntimeException e) {
+            // Duplicates stored before the index existed have to be removed by hand
+            log.warn("Could not create unique filename index for {}: {}", GridFsImageStore.FILES_COLLECTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Messages are appended with $push, which fails on documents whose
+     * messages field is null. Older documents are normalized to an empty array.
+     */
+    void migrateSessionMessages() {
+        Query legacySessions = Query.query(Criteria.where("messages").is(null));
+        long migrated = mongoTemplate
+                .updateMulti(legacySessions, new Update().set("messages", List.of()), ChatSession.class)
+                .getModifiedCount();
+
+        if (migrated > 0) {
+            log.info("Migrated {} chat sessions to append-only message storage", migrated);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.madlen_demo2.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens a few pooled connections to OpenRouter at startup so the first chat
+ * requests don't pay for DNS, TCP and TLS handshakes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OpenRouterConnectionWarmer {
+
+    private final WebClient openRouterWebClient;
+    private final OpenRouterProperties openRouterProperties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        int connections = openRouterProperties.getHttp().getWarmupConnections();
+        if (connections <= 0) {
+            return;
+        }
+
+        AtomicInteger opened = new AtomicInteger();
+        // Concurrent HEAD requests force separate connections; any HTTP status means the connection is up
+        Flux.range(0, connections)
+                .flatMap(i -> openRouterWebClient.head()
+                        .uri("/models")
+                        .exchangeToMono(response -> response.releaseBody().doOnSuccess(v -> opened.incrementAndGet()))
+                        .timeout(Duration.ofSeconds(10))
+                        .onErrorResume(e -> {
+                            log.debug("Connection warm-up request failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }), connections)
+                .doOnComplete(() -> log.info("Warmed up {}/{} OpenRouter connections", opened.get(), connections))
+                .subscribe();
+    }
+}
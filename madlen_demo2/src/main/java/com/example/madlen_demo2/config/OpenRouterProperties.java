@@ -5,9 +5,12 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import com.example.madlen_demo2.model.AIModel;
+import java.util.Map;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "openrouter")
@@ -15,10 +18,139 @@ public class OpenRouterProperties {
     
     private Api api = new Api();
     private List<AIModel> freeModels = new ArrayList<>();
+    // Optional JSON file (e.g. file:./config/models.json) that overrides freeModels on reload
+    private String modelsFile;
+    private Concurrency concurrency = new Concurrency();
+    private Http http = new Http();
+    private Catalog catalog = new Catalog();
+    private Cache cache = new Cache();
+    private Fragments fragments = new Fragments();
+    private Retry retry = new Retry();
+    private Hedging hedging = new Hedging();
+    private Routing routing = new Routing();
+    // Model id -> models tried in order when it fails; the first one is also the hedging target
+    private Map<String, List<String>> fallbacks = new HashMap<>();
     
     @Data
     public static class Api {
         private String baseUrl = "https://openrouter.ai/api/v1";
         private String key;
     }
+
+    @Data
+    public static class Http {
+        // Connection pool
+        private int maxConnections = 200;
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(45);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+
+        // Timeouts
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        // Maximum gap between reads on a response (streams included)
+        private Duration responseTimeout = Duration.ofSeconds(120);
+
+        // Protocol
+        private boolean http2 = true;
+        private boolean compression = true;
+
+        // Connections opened at startup so the first requests skip TCP/TLS handshakes
+        private int warmupConnections = 4;
+
+        // Publish pool metrics (active, idle, pending) to Micrometer
+        private boolean metrics = true;
+    }
+
+    @Data
+    public static class Catalog {
+        // Periodically sync model availability, context length, modalities and pricing from GET /models
+        private boolean enabled = true;
+
+        // How long a fetched catalog is considered fresh
+        private Duration ttl = Duration.ofMinutes(15);
+
+        // Upper bound for a single catalog request
+        private Duration requestTimeout = Duration.ofSeconds(20);
+
+        // Also offer upstream models that are free but missing from freeModels
+        private boolean discoverFreeModels = false;
+    }
+
+    @Data
+    public static class Cache {
+        // Exact-match completion cache; opt-in because identical prompts then get identical replies
+        private boolean enabled = false;
+        private long maxEntries = 10_000;
+        private Duration ttl = Duration.ofHours(1);
+
+        // Characters per chunk when a cached reply is replayed on the streaming endpoint
+        private int replayChunkSize = 24;
+    }
+
+    @Data
+    public static class Fragments {
+        // Reuse the encoded JSON of history messages across turns instead of re-serializing them
+        private boolean enabled = true;
+        private long maxBytes = 128L * 1024 * 1024;
+        private Duration expireAfterAccess = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Retry {
+        // Retry 429, 408, 5xx and connection failures that happened before any output
+        private boolean enabled = true;
+        // Including the first attempt
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(5);
+        // Random share of each backoff, between 0 and 1
+        private double jitter = 0.5;
+    }
+
+    @Data
+    public static class Hedging {
+        // Send a duplicate request to the first fallback model when the answer is slow
+        private boolean enabled = false;
+        // Hedge after this percentile of recent latencies (time to first token when streaming)
+        private double percentile = 0.95;
+        // Delay used until a model has enough samples
+        private Duration initialDelay = Duration.ofSeconds(8);
+        private Duration minDelay = Duration.ofSeconds(1);
+        private Duration maxDelay = Duration.ofSeconds(30);
+        private int minSamples = 20;
+        // Recent latencies kept per model
+        private int window = 200;
+    }
+
+    @Data
+    public static class Routing {
+        // Weight of the newest sample in the moving averages of latency, time to first token and error rate
+        private double ewmaAlpha = 0.2;
+        // Consecutive failures that open a model's circuit; calls to it then fail right away
+        private int failureThreshold = 5;
+        // How long an open circuit rejects calls before trial calls are let through
+        private Duration openDuration = Duration.ofSeconds(30);
+        // Trial calls allowed at once while the circuit is half open
+        private int halfOpenProbes = 1;
+        // Latency at which a model with no errors scores 0.5; faster models score higher
+        private Duration latencyReference = Duration.ofSeconds(2);
+        // Models that model "auto" may pick; empty means every available model
+        private List<String> autoModels = new ArrayList<>();
+    }
+
+    @Data
+    public static class Concurrency {
+        // Maximum concurrent upstream calls per model id, to protect upstream quotas
+        private int maxPerModel = 16;
+        // Per-model overrides of maxPerModel
+        private Map<String, Integer> models = new HashMap<>();
+        // Requests that may wait for a free slot per model; further requests are shed right away
+        private int maxQueue = 32;
+        // Per-model overrides of maxQueue
+        private Map<String, Integer> queues = new HashMap<>();
+        // How long a request may wait for a free slot before it is rejected
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+    }
 }
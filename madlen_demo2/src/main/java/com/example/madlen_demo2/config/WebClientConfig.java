@@ -1,11 +1,16 @@
 package com.example.madlen_demo2.config;
 
+import io.netty.channel.ChannelOption;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 @RequiredArgsConstructor
@@ -17,6 +22,7 @@ public class WebClientConfig {
     public WebClient openRouterWebClient() {
         return WebClient.builder()
                 .baseUrl(openRouterProperties.getApi().getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(openRouterHttpClient()))
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
                 .codecs(configurer -> configurer
@@ -24,4 +30,29 @@ public class WebClientConfig {
                         .maxInMemorySize(32 * 1024 * 1024)) // 32MB for large image payloads
                 .build();
     }
-}
\ No newline at end of file
+
+    private HttpClient openRouterHttpClient() {
+        OpenRouterProperties.Http http = openRouterProperties.getHttp();
+
+        // Pool metrics are published as reactor.netty.connection.provider.* to the global registry,
+        // which Spring Boot also exports through /actuator/prometheus
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("openrouter")
+                .maxConnections(http.getMaxConnections())
+                .pendingAcquireMaxCount(http.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+                .maxIdleTime(http.getMaxIdleTime())
+                .maxLifeTime(http.getMaxLifeTime())
+                .evictInBackground(http.getEvictInBackground())
+                .metrics(http.isMetrics())
+                .build();
+
+        return HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(http.getResponseTimeout())
+                .compress(http.isCompression())
+                .protocol(http.isHttp2()
+                        ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11});
+    }
+}
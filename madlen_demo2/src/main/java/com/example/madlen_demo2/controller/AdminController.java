@@ -0,0 +1,109 @@
+package com.example.madlen_demo2.controller;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.dto.ModelRegistryStatus;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.AIModel;
+import com.example.madlen_demo2.service.ModelCatalogSync;
+import com.example.madlen_demo2.service.ModelRegistry;
+import io.micrometer.observation.annotation.Observed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
+    private final ModelRegistry modelRegistry;
+    private final ModelCatalogSync modelCatalogSync;
+    private final ChatProperties chatProperties;
+
+    /**
+     * Show which model list is currently active
+     * GET /api/admin/models
+     */
+    @GetMapping("/models")
+    @Observed(name = "api.admin.get-model-registry")
+    public ResponseEntity<ModelRegistryStatus> getModelRegistry(
+            @RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        verifyToken(token);
+        return ResponseEntity.ok(toStatus(modelRegistry.snapshot()));
+    }
+
+    /**
+     * Reload the model list from configuration without a restart
+     * POST /api/admin/models/reload
+     */
+    @PostMapping("/models/reload")
+    @Observed(name = "api.admin.reload-models")
+    public ResponseEntity<ModelRegistryStatus> reloadModels(
+            @RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        verifyToken(token);
+        log.info("POST /api/admin/models/reload");
+        modelRegistry.reloadFromConfig();
+        modelCatalogSync.reapply();
+        return ResponseEntity.ok(toStatus(modelRegistry.snapshot()));
+    }
+
+    /**
+     * Fetch the upstream model catalog now instead of waiting for the TTL to expire
+     * POST /api/admin/models/sync
+     */
+    @PostMapping("/models/sync")
+    @Observed(name = "api.admin.sync-models")
+    public ResponseEntity<ModelRegistryStatus> syncModels(
+            @RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        verifyToken(token);
+        log.info("POST /api/admin/models/sync");
+        if (!modelCatalogSync.refresh()) {
+            throw new ChatExceptions.OpenRouterException("Model catalog could not be fetched, serving the previous list");
+        }
+        return ResponseEntity.ok(toStatus(modelRegistry.snapshot()));
+    }
+
+    /**
+     * Replace the model list with the one in the request body
+     * PUT /api/admin/models
+     */
+    @PutMapping("/models")
+    @Observed(name = "api.admin.replace-models")
+    public ResponseEntity<ModelRegistryStatus> replaceModels(
+            @RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token,
+            @RequestBody List<AIModel> models) {
+        verifyToken(token);
+        log.info("PUT /api/admin/models - {} models", models.size());
+        modelRegistry.replace(models, "admin");
+        modelCatalogSync.reapply();
+        return ResponseEntity.ok(toStatus(modelRegistry.snapshot()));
+    }
+
+    private void verifyToken(String token) {
+        String expected = chatProperties.getAdmin().getToken();
+        if (expected == null || expected.isBlank() || token == null
+                || !MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            throw new ChatExceptions.AdminAccessDeniedException();
+        }
+    }
+
+    private ModelRegistryStatus toStatus(ModelRegistry.Snapshot snapshot) {
+        return ModelRegistryStatus.builder()
+                .version(snapshot.version())
+                .source(snapshot.source())
+                .loadedAt(snapshot.loadedAt())
+                .totalModels(snapshot.all().size())
+                .visionModels(snapshot.vision().size())
+                .textModels(snapshot.text().size())
+                .catalogFetchedAt(modelCatalogSync.getFetchedAt())
+                .build();
+    }
+}
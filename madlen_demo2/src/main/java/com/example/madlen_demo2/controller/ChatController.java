@@ -3,9 +3,13 @@ package com.example.madlen_demo2.controller;
 import com.example.madlen_demo2.dto.ChatRequest;
 import com.example.madlen_demo2.dto.ChatResponse;
 import com.example.madlen_demo2.dto.CreateSessionRequest;
+import com.example.madlen_demo2.dto.MessagePageResponse;
+import com.example.madlen_demo2.dto.SessionPageResponse;
 import com.example.madlen_demo2.dto.SessionResponse;
 import com.example.madlen_demo2.model.AIModel;
+import com.example.madlen_demo2.service.BlockingChatExecutor;
 import com.example.madlen_demo2.service.ChatService;
+import com.example.madlen_demo2.service.ChatStreamRegistry;
 import io.micrometer.observation.annotation.Observed;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -13,11 +17,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -26,6 +32,8 @@ import java.util.Map;
 public class ChatController {
 
     private final ChatService chatService;
+    private final BlockingChatExecutor blockingChatExecutor;
+    private final ChatStreamRegistry chatStreamRegistry;
 
     // ==================== Model Endpoints ====================
 
@@ -91,6 +99,20 @@ public class ChatController {
         return ResponseEntity.ok(chatService.getUserSessions(userId));
     }
 
+    /**
+     * Get a page of lightweight session summaries (no messages) for the sidebar
+     * GET /api/sessions/summary?userId={userId}&cursor={cursor}&limit={limit}
+     */
+    @GetMapping("/sessions/summary")
+    @Observed(name = "api.get-session-summaries")
+    public ResponseEntity<SessionPageResponse> getSessionSummaries(
+            @RequestParam String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        log.debug("GET /api/sessions/summary - userId: {}, cursor: {}", userId, cursor);
+        return ResponseEntity.ok(chatService.getUserSessionSummaries(userId, cursor, limit));
+    }
+
     /**
      * Get a specific session with message history
      * GET /api/sessions/{sessionId}
@@ -102,6 +124,23 @@ public class ChatController {
         return ResponseEntity.ok(chatService.getSession(sessionId));
     }
 
+    /**
+     * Get a window of a session's messages instead of the full history
+     * GET /api/sessions/{sessionId}/messages?limit={limit}                 (latest messages)
+     * GET /api/sessions/{sessionId}/messages?before={index}&limit={limit}  (older messages)
+     * GET /api/sessions/{sessionId}/messages?since={index}                 (delta sync)
+     */
+    @GetMapping("/sessions/{sessionId}/messages")
+    @Observed(name = "api.get-messages")
+    public ResponseEntity<MessagePageResponse> getMessages(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) Integer before,
+            @RequestParam(required = false) Integer since,
+            @RequestParam(required = false) Integer limit) {
+        log.debug("GET /api/sessions/{}/messages - before: {}, since: {}, limit: {}", sessionId, before, since, limit);
+        return ResponseEntity.ok(chatService.getMessages(sessionId, before, since, limit));
+    }
+
     /**
      * Delete a session
      * DELETE /api/sessions/{sessionId}?userId={userId}
@@ -152,24 +191,51 @@ public class ChatController {
      */
     @PostMapping("/chat")
     @Observed(name = "api.chat")
-    public ResponseEntity<ChatResponse> sendMessage(@Valid @RequestBody ChatRequest request) {
+    public CompletableFuture<ResponseEntity<ChatResponse>> sendMessage(@Valid @RequestBody ChatRequest request) {
         log.debug("POST /api/chat - sessionId: {}, hasImages: {}",
                 request.getSessionId(), request.hasImages());
-        return ResponseEntity.ok(chatService.sendMessage(request));
+        return blockingChatExecutor.submit(() -> ResponseEntity.ok(chatService.sendMessage(request)));
     }
 
     /**
      * Send a message and stream the response
      * Supports multi-modal messages with images
      * POST /api/chat/stream
-     * Returns Server-Sent Events
+     * Returns Server-Sent Events with ids of the form streamId:seq; the whole pipeline is non-blocking
      */
     @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @Observed(name = "api.chat-stream")
-    public Flux<String> sendMessageStream(@Valid @RequestBody ChatRequest request) {
+    public Flux<ServerSentEvent<String>> sendMessageStream(@Valid @RequestBody ChatRequest request) {
         log.debug("POST /api/chat/stream - sessionId: {}, hasImages: {}",
                 request.getSessionId(), request.hasImages());
-        return chatService.sendMessageStream(request);
+        return chatStreamRegistry.start(request.getSessionId(),
+                turnStarted -> chatService.sendMessageStream(request, turnStarted));
+    }
+
+    /**
+     * Reconnect to a stream after a dropped connection
+     * GET /api/chat/stream/{streamId}
+     * Replays the events after Last-Event-ID, then continues live
+     */
+    @GetMapping(value = "/chat/stream/{streamId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Observed(name = "api.chat-stream-resume")
+    public Flux<ServerSentEvent<String>> resumeStream(
+            @PathVariable String streamId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.debug("GET /api/chat/stream/{} - Last-Event-ID: {}", streamId, lastEventId);
+        return chatStreamRegistry.resume(streamId, lastEventId);
+    }
+
+    /**
+     * Follow the reply currently being generated for a session, e.g. from another tab or device
+     * GET /api/sessions/{sessionId}/stream
+     * Starts from the beginning of the reply; completes right away when none is in progress
+     */
+    @GetMapping(value = "/sessions/{sessionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Observed(name = "api.session-stream")
+    public Flux<ServerSentEvent<String>> watchSessionStream(@PathVariable String sessionId) {
+        log.debug("GET /api/sessions/{}/stream", sessionId);
+        return chatStreamRegistry.watch(sessionId);
     }
 
     /**
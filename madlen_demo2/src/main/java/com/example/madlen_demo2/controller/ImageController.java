@@ -0,0 +1,92 @@
+package com.example.madlen_demo2.controller;
+
+import com.example.madlen_demo2.dto.ImageUploadResponse;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.StoredImage;
+import com.example.madlen_demo2.service.ImageService;
+import io.micrometer.observation.annotation.Observed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/images")
+@RequiredArgsConstructor
+public class ImageController {
+
+    private final ImageService imageService;
+
+    /**
+     * Upload an image as multipart/form-data (part name "file").
+     * The returned imageId can be sent in a later ChatRequest as {"type": "ref", "imageId": ...}
+     * Unlike the raw-bytes route this does not stream: the container writes the whole part to a
+     * temp file before this runs, so an image over chat.images.max-size-bytes is only rejected afterwards.
+     * POST /api/images
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Observed(name = "api.upload-image-multipart")
+    public ResponseEntity<ImageUploadResponse> uploadMultipart(@RequestPart("file") MultipartFile file) {
+        log.debug("POST /api/images (multipart) - size: {}, type: {}", file.getSize(), file.getContentType());
+        try (InputStream in = file.getInputStream()) {
+            return ResponseEntity.status(HttpStatus.CREATED).body(imageService.ingest(in, file.getContentType()));
+        } catch (IOException e) {
+            throw new ChatExceptions.InvalidImageException("Upload could not be read");
+        }
+    }
+
+    /**
+     * Upload raw image bytes with an image/* or application/octet-stream Content-Type.
+     * The body is read in chunks and rejected as soon as it passes the size limit, so this route never
+     * holds a whole upload in memory.
+     * POST /api/images
+     */
+    @PostMapping(consumes = {
+            MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_GIF_VALUE,
+            "image/webp", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @Observed(name = "api.upload-image-binary")
+    public ResponseEntity<ImageUploadResponse> uploadBinary(
+            InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType) {
+        log.debug("POST /api/images (binary) - type: {}", contentType);
+        return ResponseEntity.status(HttpStatus.CREATED).body(imageService.ingest(body, contentType));
+    }
+
+    /**
+     * Serve a stored image by its content hash.
+     * Content never changes for a given id, so it can be cached indefinitely.
+     * GET /api/images/{imageId}
+     */
+    @GetMapping("/{imageId}")
+    @Observed(name = "api.get-image")
+    public ResponseEntity<byte[]> getImage(@PathVariable String imageId) {
+        log.debug("GET /api/images/{}", imageId);
+        return imageService.load(imageId)
+                .map(this::toResponse)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<byte[]> toResponse(StoredImage image) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(image.getMediaType()))
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .eTag(image.getId())
+                .body(image.getData());
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.madlen_demo2.controller;
+
+import com.example.madlen_demo2.model.AIModel;
+import com.example.madlen_demo2.service.ModelHealthTracker;
+import com.example.madlen_demo2.service.ModelRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Health and circuit state of every model
+ * GET /actuator/models
+ */
+@Component
+@Endpoint(id = "models")
+@RequiredArgsConstructor
+public class ModelHealthEndpoint {
+
+    private final ModelRegistry modelRegistry;
+    private final ModelHealthTracker healthTracker;
+
+    public record ModelHealth(boolean available, boolean supportsVision, boolean callable,
+                              ModelHealthTracker.Status health) {
+    }
+
+    @ReadOperation
+    public Map<String, ModelHealth> models() {
+        Map<String, ModelHealthTracker.Status> statuses = healthTracker.statuses();
+        Map<String, ModelHealth> models = new LinkedHashMap<>();
+        for (AIModel model : modelRegistry.all()) {
+            // Health is null for models that have not been called yet
+            models.put(model.getId(), new ModelHealth(model.isAvailable(), model.isSupportsVision(),
+                    healthTracker.isCallable(model.getId()), statuses.get(model.getId())));
+        }
+        return models;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.madlen_demo2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageUploadResponse {
+
+    private String imageId; // Use as {"type": "ref", "imageId": ...} in ChatRequest.images
+    private String mediaType;
+    private long sizeBytes;
+}
@@ -0,0 +1,27 @@
+package com.example.madlen_demo2.dto;
+
+import com.example.madlen_demo2.model.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePageResponse {
+
+    private String sessionId;
+    private List<ChatMessage> messages;
+
+    // Position of the first returned message in the session history.
+    // Use it as "before" to load older messages, or startIndex + messages.size() as "since".
+    private int startIndex;
+
+    private int totalMessages;
+    private boolean hasOlder;
+    private boolean hasNewer;
+}
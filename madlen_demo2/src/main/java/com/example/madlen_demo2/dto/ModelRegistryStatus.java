@@ -0,0 +1,29 @@
+package com.example.madlen_demo2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModelRegistryStatus {
+
+    // Increases every time a new model list is swapped in
+    private long version;
+
+    // Where the current list came from ("config", a models file, "admin", ...)
+    private String source;
+
+    private Instant loadedAt;
+    private int totalModels;
+    private int visionModels;
+    private int textModels;
+
+    // Last successful upstream catalog fetch, null if none yet
+    private Instant catalogFetchedAt;
+}
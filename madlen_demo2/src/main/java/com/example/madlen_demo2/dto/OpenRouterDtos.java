@@ -128,6 +128,20 @@ public class OpenRouterDtos {
         private List<Choice> choices;
     }
 
+    /**
+     * Fields extracted from one event of a streaming completion
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StreamEvent {
+        private String content;
+        private String finishReason;
+        private Usage usage;
+        private String errorMessage;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -143,4 +157,48 @@ public class OpenRouterDtos {
         private String type;
         private String code;
     }
-}
\ No newline at end of file
+
+    /**
+     * Response of GET /models (the upstream model catalog)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ModelsResponse {
+        private List<ModelInfo> data;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ModelInfo {
+        private String id;
+        private String name;
+        private String description;
+
+        @JsonProperty("context_length")
+        private Integer contextLength;
+
+        private Architecture architecture;
+        private Pricing pricing;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Architecture {
+        @JsonProperty("input_modalities")
+        private List<String> inputModalities;
+
+        @JsonProperty("output_modalities")
+        private List<String> outputModalities;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Pricing {
+        private String prompt;
+        private String completion;
+    }
+}
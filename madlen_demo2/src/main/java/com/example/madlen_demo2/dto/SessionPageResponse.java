@@ -0,0 +1,21 @@
+package com.example.madlen_demo2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionPageResponse {
+
+    // Session summaries without messages, newest first
+    private List<SessionResponse> sessions;
+
+    // Opaque cursor for the next page, null when there are no more sessions
+    private String nextCursor;
+}
@@ -3,6 +3,8 @@ package com.example.madlen_demo2.exception;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import java.time.Duration;
+
 public class ChatExceptions {
 
     @ResponseStatus(HttpStatus.NOT_FOUND)
@@ -12,6 +14,13 @@ public class ChatExceptions {
         }
     }
 
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public static class StreamNotFoundException extends RuntimeException {
+        public StreamNotFoundException(String streamId) {
+            super("Stream not found or expired: " + streamId);
+        }
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public static class SessionLimitExceededException extends RuntimeException {
         public SessionLimitExceededException(int limit) {
@@ -26,6 +35,20 @@ public class ChatExceptions {
         }
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class InvalidCursorException extends RuntimeException {
+        public InvalidCursorException(String cursor) {
+            super("Invalid pagination cursor: " + cursor);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class InvalidParameterException extends RuntimeException {
+        public InvalidParameterException(String reason) {
+            super("Invalid request parameters: " + reason);
+        }
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public static class InvalidModelException extends RuntimeException {
         public InvalidModelException(String model) {
@@ -40,6 +63,49 @@ public class ChatExceptions {
         }
     }
 
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public static class SessionBusyException extends RuntimeException {
+        public SessionBusyException(String sessionId) {
+            super("A previous message in session " + sessionId + " is still being processed. Please try again shortly.");
+        }
+    }
+
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public static class RateLimitExceededException extends RuntimeException {
+        private final Duration retryAfter;
+
+        public RateLimitExceededException(String limit, Duration retryAfter) {
+            super("Rate limit for " + limit + " exceeded. Please try again in " + Math.max(1, retryAfter.toSeconds()) + " seconds.");
+            this.retryAfter = retryAfter;
+        }
+
+        public long getRetryAfterSeconds() {
+            // Retry-After has whole seconds; round up so the retry is not rejected again
+            return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class ModelBusyException extends RuntimeException {
+        public ModelBusyException(String model) {
+            super("The model '" + model + "' is busy right now. Please try again shortly.");
+        }
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class ModelOverloadedException extends RuntimeException {
+        public ModelOverloadedException(String model) {
+            super("The model '" + model + "' has too many requests waiting. Please try again shortly or choose another model.");
+        }
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class ModelUnavailableException extends RuntimeException {
+        public ModelUnavailableException(String model) {
+            super("The model '" + model + "' is failing right now. Please try again later or choose another model.");
+        }
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public static class ApiKeyNotConfiguredException extends RuntimeException {
         public ApiKeyNotConfiguredException() {
@@ -67,4 +133,18 @@ public class ChatExceptions {
             super("Image size exceeds maximum allowed size of " + (maxSizeBytes / 1024 / 1024) + " MB");
         }
     }
-}
\ No newline at end of file
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class InvalidModelCatalogException extends RuntimeException {
+        public InvalidModelCatalogException(String reason) {
+            super("Invalid model catalog: " + reason);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public static class AdminAccessDeniedException extends RuntimeException {
+        public AdminAccessDeniedException() {
+            super("Admin access denied");
+        }
+    }
+}
@@ -4,12 +4,14 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.time.Instant;
 import java.util.HashMap;
@@ -36,6 +38,12 @@ public class GlobalExceptionHandler {
         return buildResponse(HttpStatus.NOT_FOUND, ex.getMessage());
     }
 
+    @ExceptionHandler(ChatExceptions.StreamNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleStreamNotFound(ChatExceptions.StreamNotFoundException ex) {
+        log.warn("Stream not found: {}", ex.getMessage());
+        return buildResponse(HttpStatus.NOT_FOUND, ex.getMessage());
+    }
+
     @ExceptionHandler(ChatExceptions.SessionLimitExceededException.class)
     public ResponseEntity<ErrorResponse> handleSessionLimit(ChatExceptions.SessionLimitExceededException ex) {
         log.warn("Session limit exceeded: {}", ex.getMessage());
@@ -48,18 +56,75 @@ public class GlobalExceptionHandler {
         return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
     }
 
+    @ExceptionHandler(ChatExceptions.InvalidCursorException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidCursor(ChatExceptions.InvalidCursorException ex) {
+        log.warn("Invalid cursor: {}", ex.getMessage());
+        return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
+    @ExceptionHandler(ChatExceptions.InvalidParameterException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidParameter(ChatExceptions.InvalidParameterException ex) {
+        log.warn("Invalid parameters: {}", ex.getMessage());
+        return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
     @ExceptionHandler(ChatExceptions.InvalidModelException.class)
     public ResponseEntity<ErrorResponse> handleInvalidModel(ChatExceptions.InvalidModelException ex) {
         log.warn("Invalid model: {}", ex.getMessage());
         return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
     }
 
+    @ExceptionHandler(ChatExceptions.InvalidModelCatalogException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidModelCatalog(ChatExceptions.InvalidModelCatalogException ex) {
+        log.warn("Invalid model catalog: {}", ex.getMessage());
+        return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
+    @ExceptionHandler(ChatExceptions.AdminAccessDeniedException.class)
+    public ResponseEntity<ErrorResponse> handleAdminAccessDenied(ChatExceptions.AdminAccessDeniedException ex) {
+        log.warn("Rejected admin request");
+        return buildResponse(HttpStatus.FORBIDDEN, ex.getMessage());
+    }
+
     @ExceptionHandler(ChatExceptions.OpenRouterException.class)
     public ResponseEntity<ErrorResponse> handleOpenRouterError(ChatExceptions.OpenRouterException ex) {
         log.error("OpenRouter API error: {}", ex.getMessage());
         return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
     }
 
+    @ExceptionHandler(ChatExceptions.SessionBusyException.class)
+    public ResponseEntity<ErrorResponse> handleSessionBusy(ChatExceptions.SessionBusyException ex) {
+        log.warn("Session busy: {}", ex.getMessage());
+        return buildResponse(HttpStatus.CONFLICT, ex.getMessage());
+    }
+
+    @ExceptionHandler(ChatExceptions.RateLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleRateLimit(ChatExceptions.RateLimitExceededException ex) {
+        log.warn("Rate limit exceeded: {}", ex.getMessage());
+        ResponseEntity<ErrorResponse> response = buildResponse(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
+    @ExceptionHandler(ChatExceptions.ModelBusyException.class)
+    public ResponseEntity<ErrorResponse> handleModelBusy(ChatExceptions.ModelBusyException ex) {
+        log.warn("Model busy: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
+    @ExceptionHandler(ChatExceptions.ModelOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleModelOverloaded(ChatExceptions.ModelOverloadedException ex) {
+        log.warn("Model overloaded: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
+    @ExceptionHandler(ChatExceptions.ModelUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleModelUnavailable(ChatExceptions.ModelUnavailableException ex) {
+        log.warn("Model unavailable: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
     @ExceptionHandler(ChatExceptions.ApiKeyNotConfiguredException.class)
     public ResponseEntity<ErrorResponse> handleApiKeyNotConfigured(ChatExceptions.ApiKeyNotConfiguredException ex) {
         log.error("API key not configured");
@@ -84,6 +149,12 @@ public class GlobalExceptionHandler {
         return buildResponse(HttpStatus.PAYLOAD_TOO_LARGE, ex.getMessage());
     }
 
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<ErrorResponse> handleMaxUploadSize(MaxUploadSizeExceededException ex) {
+        log.warn("Upload too large: {}", ex.getMessage());
+        return buildResponse(HttpStatus.PAYLOAD_TOO_LARGE, "Upload exceeds the maximum allowed request size");
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidationErrors(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
@@ -5,8 +5,10 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class AIModel {
@@ -21,4 +23,12 @@ public class AIModel {
     // Indicates if the model supports vision/image inputs
     @Builder.Default
     private boolean supportsVision = false;
+
+    // Filled in from the upstream catalog (null until the first successful sync)
+    private Integer contextLength;
+    private List<String> inputModalities;
+
+    // USD per token, as reported by OpenRouter
+    private String promptPrice;
+    private String completionPrice;
 }
\ No newline at end of file
@@ -22,6 +22,9 @@ public class ChatMessage {
 
     private String model;
 
+    // True when the reply was cut off before the model finished (e.g. the client disconnected)
+    private Boolean truncated;
+
     @Builder.Default
     private Instant timestamp = Instant.now();
 
@@ -5,24 +5,25 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
-import org.springframework.data.mongodb.core.index.Indexed;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "chat_sessions")
+@CompoundIndex(name = "user_updated_idx", def = "{'userId': 1, 'updatedAt': -1, '_id': -1}")
 public class ChatSession {
     
     @Id
     private String id;
     
-    @Indexed
     private String userId;
     
     private String title;
@@ -31,12 +32,21 @@ public class ChatSession {
     
     @Builder.Default
     private List<ChatMessage> messages = new ArrayList<>();
+
+    // Rolling summary of messages[0, summarizedCount); sent upstream in place of those messages
+    private String summary;
+
+    private int summarizedCount;
     
     @Builder.Default
     private Instant createdAt = Instant.now();
     
     @Builder.Default
     private Instant updatedAt = Instant.now();
+
+    // Bumped by every write to the document; message appends only apply at the version they were based on
+    @Version
+    private Long version;
     
     public void addMessage(ChatMessage message) {
         if (this.messages == null) {
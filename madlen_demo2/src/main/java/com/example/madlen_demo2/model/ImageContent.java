@@ -11,9 +11,10 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class ImageContent {
 
-    private String type; // "base64" or "url"
-    private String data; // base64 encoded image data or URL
+    private String type; // "base64", "url" or "ref"
+    private String data; // base64 encoded image data or URL (null for "ref")
     private String mediaType; // e.g., "image/jpeg", "image/png", "image/gif", "image/webp"
+    private String imageId; // SHA-256 of the stored image bytes (only for "ref")
 
     /**
      * Create an ImageContent from base64 data
@@ -36,10 +37,25 @@ public class ImageContent {
                 .build();
     }
 
+    /**
+     * Create a reference to an image in the image store
+     */
+    public static ImageContent fromRef(String imageId, String mediaType) {
+        return ImageContent.builder()
+                .type("ref")
+                .imageId(imageId)
+                .mediaType(mediaType)
+                .build();
+    }
+
     /**
      * Check if this is a valid image content
      */
     public boolean isValid() {
+        if ("ref".equals(type)) {
+            return imageId != null && !imageId.isBlank();
+        }
+
         if (type == null || data == null || data.isBlank()) {
             return false;
         }
@@ -0,0 +1,24 @@
+package com.example.madlen_demo2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A slice of a session's messages together with the total message count
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageWindow {
+
+    @Builder.Default
+    private List<ChatMessage> messages = new ArrayList<>();
+
+    private int totalMessages;
+}
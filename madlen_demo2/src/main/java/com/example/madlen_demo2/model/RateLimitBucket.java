@@ -0,0 +1,35 @@
+package com.example.madlen_demo2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Token bucket shared by all instances when rate limits are kept in MongoDB
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "chat_rate_limits")
+public class RateLimitBucket {
+
+    // "<limit>:<userId>"
+    @Id
+    private String id;
+
+    private double tokens;
+
+    // Wall-clock time of the last refill, in epoch milliseconds
+    private long refilledAt;
+
+    // Idle buckets are full again long before they expire
+    @Indexed(name = "refilled_ttl_idx", expireAfter = "1h")
+    private Instant updatedAt;
+}
@@ -0,0 +1,27 @@
+package com.example.madlen_demo2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Lightweight projection of a ChatSession without its messages.
+ * messageCount is computed on the MongoDB side.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionSummary {
+
+    private String id;
+    private String userId;
+    private String title;
+    private String selectedModel;
+    private int messageCount;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
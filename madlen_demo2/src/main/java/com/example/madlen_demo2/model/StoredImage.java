@@ -0,0 +1,20 @@
+package com.example.madlen_demo2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Raw image bytes loaded from the image store
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredImage {
+
+    private String id; // SHA-256 of the image bytes
+    private String mediaType;
+    private byte[] data;
+}
@@ -0,0 +1,44 @@
+package com.example.madlen_demo2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Partial assistant reply of a streamed turn, written periodically while it is generated.
+ * Lets a client that reconnects after the stream left memory recover the text produced so far.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "chat_stream_checkpoints")
+public class StreamCheckpoint {
+
+    public static final String STREAMING = "streaming";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+    public static final String CANCELLED = "cancelled";
+
+    // Stream id as sent in the SSE event ids
+    @Id
+    private String id;
+
+    private String sessionId;
+
+    private String content;
+
+    // Sequence number of the last chunk included in content
+    private long lastSeq;
+
+    private String status;
+
+    @Indexed(name = "updated_ttl_idx", expireAfter = "1d")
+    private Instant updatedAt;
+}
@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface ChatSessionRepository extends MongoRepository<ChatSession, String> {
+public interface ChatSessionRepository extends MongoRepository<ChatSession, String>, ChatSessionRepositoryCustom {
     
     List<ChatSession> findByUserIdOrderByUpdatedAtDesc(String userId);
     
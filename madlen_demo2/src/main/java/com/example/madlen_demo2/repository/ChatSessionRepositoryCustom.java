@@ -0,0 +1,62 @@
+package com.example.madlen_demo2.repository;
+
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.MessageWindow;
+import com.example.madlen_demo2.model.SessionSummary;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Targeted update operations that avoid rewriting the whole session document
+ */
+public interface ChatSessionRepositoryCustom {
+
+    /**
+     * Atomically append messages to a session with a single $push, provided nobody else
+     * wrote to it since {@code expectedVersion}. Only the new messages are sent to MongoDB,
+     * regardless of history length.
+     *
+     * @param title           title to set, or null to leave it untouched
+     * @param selectedModel   model to set, or null to leave it untouched
+     * @param expectedVersion version the caller's copy of the session is at (null for documents without one)
+     * @return the new version, or empty if the session changed in the meantime or does not exist
+     */
+    Optional<Long> appendMessages(String sessionId, List<ChatMessage> messages, String title, String selectedModel,
+                                  Long expectedVersion);
+
+    /**
+     * Update only the selected model of a session. Bumps the version like every other write.
+     *
+     * @return the new version, or empty if the session does not exist
+     */
+    Optional<Long> updateSelectedModel(String sessionId, String model);
+
+    /**
+     * Store a new rolling summary, unless another run already moved the summary on.
+     * Leaves updatedAt untouched so the session doesn't jump to the top of the list, but bumps the version.
+     *
+     * @param expectedSummarizedCount summarizedCount the new summary was built on
+     * @return the new version, or empty if the session is gone or its summary changed in the meantime
+     */
+    Optional<Long> updateSummary(String sessionId, String summary, int summarizedCount, int expectedSummarizedCount);
+
+    /**
+     * Fetch a page of session summaries for a user, newest first, without loading messages.
+     * Pages are keyed on (updatedAt, id) so results stay stable while sessions are updated.
+     *
+     * @param updatedBefore updatedAt of the last session on the previous page, or null for the first page
+     * @param idBefore      id of the last session on the previous page, or null for the first page
+     */
+    List<SessionSummary> findSessionSummaries(String userId, Instant updatedBefore, String idBefore, int limit);
+
+    /**
+     * Fetch a window of messages using a $slice projection, so only the requested
+     * messages leave the database.
+     *
+     * @param offset position of the first message, or null for the last {@code count} messages
+     * @return empty if the session does not exist
+     */
+    Optional<MessageWindow> findMessageWindow(String sessionId, Integer offset, int count);
+}
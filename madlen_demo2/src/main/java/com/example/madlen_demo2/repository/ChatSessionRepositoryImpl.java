@@ -0,0 +1,102 @@
+package com.example.madlen_demo2.repository;
+
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.ChatSession;
+import com.example.madlen_demo2.model.MessageWindow;
+import com.example.madlen_demo2.model.SessionSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+public class ChatSessionRepositoryImpl implements ChatSessionRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Optional<Long> appendMessages(String sessionId, List<ChatMessage> messages, String title,
+                                         String selectedModel, Long expectedVersion) {
+        Query query = Query.query(Criteria.where("_id").is(sessionId).and("version").is(expectedVersion));
+        return updateVersioned(query, SessionUpdates.appendMessages(messages, title, selectedModel));
+    }
+
+    @Override
+    public Optional<Long> updateSelectedModel(String sessionId, String model) {
+        return updateVersioned(SessionUpdates.byId(sessionId), SessionUpdates.selectedModel(model));
+    }
+
+    @Override
+    public Optional<Long> updateSummary(String sessionId, String summary, int summarizedCount, int expectedSummarizedCount) {
+        Criteria expected = expectedSummarizedCount == 0
+                ? new Criteria().orOperator(
+                        Criteria.where("summarizedCount").is(0),
+                        Criteria.where("summarizedCount").exists(false))
+                : Criteria.where("summarizedCount").is(expectedSummarizedCount);
+        Query query = Query.query(Criteria.where("_id").is(sessionId).andOperator(expected));
+        Update update = new Update()
+                .set("summary", summary)
+                .set("summarizedCount", summarizedCount);
+        return updateVersioned(query, update);
+    }
+
+    /**
+     * Apply an update to the matching session, bumping its version
+     *
+     * @return the new version, or empty if no session matched
+     */
+    private Optional<Long> updateVersioned(Query query, Update update) {
+        query.fields().include("version");
+        ChatSession updated = mongoTemplate.findAndModify(query, update.inc("version", 1),
+                FindAndModifyOptions.options().returnNew(true), ChatSession.class);
+        return Optional.ofNullable(updated).map(ChatSession::getVersion);
+    }
+
+    @Override
+    public List<SessionSummary> findSessionSummaries(String userId, Instant updatedBefore, String idBefore, int limit) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (updatedBefore != null && idBefore != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("updatedAt").lt(updatedBefore),
+                    Criteria.where("updatedAt").is(updatedBefore).and("_id").lt(idBefore));
+        }
+
+        // Served by the (userId, updatedAt, _id) index; messages never leave the database
+        TypedAggregation<ChatSession> aggregation = Aggregation.newAggregation(ChatSession.class,
+                Aggregation.match(criteria),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "updatedAt", "_id")),
+                Aggregation.limit(limit),
+                Aggregation.project("userId", "title", "selectedModel", "createdAt", "updatedAt")
+                        .and(ArrayOperators.Size.lengthOfArray(
+                                ConditionalOperators.ifNull("messages").then(List.of())))
+                        .as("messageCount"));
+
+        return mongoTemplate.aggregate(aggregation, SessionSummary.class).getMappedResults();
+    }
+
+    @Override
+    public Optional<MessageWindow> findMessageWindow(String sessionId, Integer offset, int count) {
+        ConditionalOperators.IfNull messages = ConditionalOperators.ifNull("messages").then(List.of());
+        ArrayOperators.Slice slice = ArrayOperators.Slice.sliceArrayOf(messages);
+        slice = offset != null ? slice.offset(offset).itemCount(count) : slice.itemCount(-count);
+
+        TypedAggregation<ChatSession> aggregation = Aggregation.newAggregation(ChatSession.class,
+                Aggregation.match(Criteria.where("_id").is(sessionId)),
+                Aggregation.project()
+                        .and(slice).as("messages")
+                        .and(ArrayOperators.Size.lengthOfArray(messages)).as("totalMessages"));
+
+        return Optional.ofNullable(mongoTemplate.aggregate(aggregation, MessageWindow.class).getUniqueMappedResult());
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.madlen_demo2.repository;
+
+import com.example.madlen_demo2.model.ChatSession;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reactive variant of {@link ChatSessionRepository}, used where the caller
+ * must not block (e.g. on Reactor Netty event-loop threads)
+ */
+@Repository
+public interface ReactiveChatSessionRepository extends ReactiveMongoRepository<ChatSession, String> {
+}
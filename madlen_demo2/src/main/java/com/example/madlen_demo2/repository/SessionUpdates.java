@@ -0,0 +1,41 @@
+package com.example.madlen_demo2.repository;
+
+import com.example.madlen_demo2.model.ChatMessage;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Update definitions used by the session repository
+ */
+final class SessionUpdates {
+
+    private SessionUpdates() {
+    }
+
+    static Query byId(String sessionId) {
+        return Query.query(Criteria.where("_id").is(sessionId));
+    }
+
+    static Update appendMessages(List<ChatMessage> messages, String title, String selectedModel) {
+        Update update = new Update()
+                .push("messages").each(messages.toArray())
+                .set("updatedAt", Instant.now());
+        if (title != null) {
+            update.set("title", title);
+        }
+        if (selectedModel != null) {
+            update.set("selectedModel", selectedModel);
+        }
+        return update;
+    }
+
+    static Update selectedModel(String model) {
+        return new Update()
+                .set("selectedModel", model)
+                .set("updatedAt", Instant.now());
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.madlen_demo2.repository;
+
+import com.example.madlen_demo2.model.StreamCheckpoint;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StreamCheckpointRepository extends ReactiveMongoRepository<StreamCheckpoint, String> {
+}
@@ -0,0 +1,52 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking chat path. With virtual threads enabled each request gets its own
+ * virtual thread and the Tomcat thread is released while the model call is in flight;
+ * otherwise the task runs on the calling thread.
+ */
+@Slf4j
+@Component
+public class BlockingChatExecutor {
+
+    private final ExecutorService executor;
+
+    public BlockingChatExecutor(ChatProperties chatProperties) {
+        if (chatProperties.getExecution().isVirtualThreads()) {
+            // Carry tracing and MDC context over to the virtual thread
+            ContextSnapshotFactory snapshotFactory = ContextSnapshotFactory.builder().build();
+            this.executor = ContextExecutorService.wrap(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-vt-", 0).factory()),
+                    snapshotFactory::captureAll);
+            log.info("Blocking chat requests run on virtual threads");
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(task.get());
+        }
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
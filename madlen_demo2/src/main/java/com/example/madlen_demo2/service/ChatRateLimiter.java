@@ -0,0 +1,95 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.dto.ChatRequest;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Per-user token buckets for chat requests and for estimated tokens, so a single client
+ * cannot use up the shared OpenRouter quota.
+ *
+ * A request needs one permit from the request bucket and the estimated tokens of the new
+ * message from the token bucket; the tokens of the reply are charged once it is known.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatRateLimiter {
+
+    private static final String REQUESTS = "requests";
+    private static final String TOKENS = "tokens";
+
+    private final RateLimitStore store;
+    private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Admit a chat request of a user
+     *
+     * @throws ChatExceptions.RateLimitExceededException if either bucket is empty
+     */
+    public void acquire(String userId, ChatRequest request) {
+        ChatProperties.RateLimit config = chatProperties.getRateLimit();
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        RateLimitStore.Bucket requests = requestBucket(config);
+        Duration wait = store.tryAcquire(key(REQUESTS, userId), requests, 1);
+        if (!wait.isZero()) {
+            throw rejected(REQUESTS, userId, wait);
+        }
+
+        RateLimitStore.Bucket tokens = tokenBucket(config);
+        // A single message larger than the bucket would never be admitted
+        long estimated = Math.min(estimateTokens(request), tokens.capacity());
+        wait = store.tryAcquire(key(TOKENS, userId), tokens, estimated);
+        if (!wait.isZero()) {
+            store.consume(key(REQUESTS, userId), requests, -1);
+            throw rejected(TOKENS, userId, wait);
+        }
+    }
+
+    /**
+     * Charge the tokens of a reply to its user
+     */
+    public void recordReply(String userId, String content) {
+        ChatProperties.RateLimit config = chatProperties.getRateLimit();
+        if (!config.isEnabled() || content == null || content.isEmpty()) {
+            return;
+        }
+        store.consume(key(TOKENS, userId), tokenBucket(config), TokenEstimator.estimate(content));
+    }
+
+    private long estimateTokens(ChatRequest request) {
+        long tokens = TokenEstimator.estimate(request.getMessage());
+        if (request.hasImages()) {
+            tokens += (long) request.getImages().size() * chatProperties.getContext().getImageTokens();
+        }
+        return tokens;
+    }
+
+    private ChatExceptions.RateLimitExceededException rejected(String limit, String userId, Duration wait) {
+        meterRegistry.counter("chat.rate-limit.rejected", "limit", limit).increment();
+        log.debug("Rate limited user {} on {} for {}", userId, limit, wait);
+        return new ChatExceptions.RateLimitExceededException(limit, wait);
+    }
+
+    private static RateLimitStore.Bucket requestBucket(ChatProperties.RateLimit config) {
+        return new RateLimitStore.Bucket(config.getRequestBurst(), config.getRequestsPerMinute() / 60d);
+    }
+
+    private static RateLimitStore.Bucket tokenBucket(ChatProperties.RateLimit config) {
+        return new RateLimitStore.Bucket(config.getTokenBurst(), config.getTokensPerMinute() / 60d);
+    }
+
+    private static String key(String limit, String userId) {
+        return limit + ":" + userId;
+    }
+}
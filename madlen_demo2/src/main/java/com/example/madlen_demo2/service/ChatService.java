@@ -4,21 +4,32 @@ import com.example.madlen_demo2.config.ChatProperties;
 import com.example.madlen_demo2.dto.ChatRequest;
 import com.example.madlen_demo2.dto.ChatResponse;
 import com.example.madlen_demo2.dto.CreateSessionRequest;
+import com.example.madlen_demo2.dto.MessagePageResponse;
+import com.example.madlen_demo2.dto.SessionPageResponse;
 import com.example.madlen_demo2.dto.SessionResponse;
 import com.example.madlen_demo2.exception.ChatExceptions;
 import com.example.madlen_demo2.model.AIModel;
 import com.example.madlen_demo2.model.ChatMessage;
 import com.example.madlen_demo2.model.ChatSession;
 import com.example.madlen_demo2.model.ImageContent;
+import com.example.madlen_demo2.model.MessageWindow;
+import com.example.madlen_demo2.model.SessionSummary;
 import com.example.madlen_demo2.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -27,8 +38,14 @@ import java.util.stream.Collectors;
 public class ChatService {
 
     private final ChatSessionRepository sessionRepository;
+    private final HotSessionCache hotSessions;
+    private final SessionTurnLocks turnLocks;
+    private final ChatRateLimiter rateLimiter;
     private final OpenRouterService openRouterService;
+    private final ImageService imageService;
+    private final ConversationSummarizer conversationSummarizer;
     private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Get all available AI models
@@ -41,9 +58,7 @@ public class ChatService {
      * Get only vision-capable models
      */
     public List<AIModel> getVisionCapableModels() {
-        return openRouterService.getAvailableModels().stream()
-                .filter(AIModel::isSupportsVision)
-                .collect(Collectors.toList());
+        return openRouterService.getVisionModels();
     }
 
     /**
@@ -78,6 +93,7 @@ public class ChatService {
                 .build();
 
         session = sessionRepository.save(session);
+        hotSessions.put(session);
         log.info("Created session: {} for user: {}", session.getId(), request.getUserId());
 
         return mapToSessionResponse(session);
@@ -90,12 +106,47 @@ public class ChatService {
     public List<SessionResponse> getUserSessions(String userId) {
         log.debug("Fetching sessions for user: {}", userId);
 
+        hotSessions.flushUser(userId);
         return sessionRepository.findByUserIdOrderByUpdatedAtDesc(userId)
                 .stream()
                 .map(this::mapToSessionResponse)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Get a page of session summaries for a user (no messages), newest first
+     */
+    @Observed(name = "chat.get-session-summaries")
+    public SessionPageResponse getUserSessionSummaries(String userId, String cursor, Integer limit) {
+        ChatProperties.Session sessionProps = chatProperties.getSession();
+        int pageSize = limit != null
+                ? Math.max(1, Math.min(limit, sessionProps.getMaxSummaryPageSize()))
+                : sessionProps.getSummaryPageSize();
+
+        Instant updatedBefore = null;
+        String idBefore = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = decodeCursor(cursor);
+            updatedBefore = Instant.ofEpochMilli(Long.parseLong(parts[0]));
+            idBefore = parts[1];
+        }
+
+        hotSessions.flushUser(userId);
+        List<SessionSummary> summaries = sessionRepository.findSessionSummaries(
+                userId, updatedBefore, idBefore, pageSize);
+
+        String nextCursor = null;
+        if (summaries.size() == pageSize) {
+            SessionSummary last = summaries.get(summaries.size() - 1);
+            nextCursor = encodeCursor(last.getUpdatedAt(), last.getId());
+        }
+
+        return SessionPageResponse.builder()
+                .sessions(summaries.stream().map(this::mapToSessionResponse).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
     /**
      * Get a specific session with full message history
      */
@@ -105,6 +156,53 @@ public class ChatService {
         return mapToSessionResponse(session);
     }
 
+    /**
+     * Get a window of a session's messages.
+     * Without before/since the latest messages are returned; "before" pages backwards
+     * through older history and "since" returns messages appended after a known position.
+     */
+    @Observed(name = "chat.get-messages")
+    public MessagePageResponse getMessages(String sessionId, Integer before, Integer since, Integer limit) {
+        if (before != null && since != null) {
+            throw new ChatExceptions.InvalidParameterException("before and since cannot be combined");
+        }
+        if ((before != null && before < 0) || (since != null && since < 0)) {
+            throw new ChatExceptions.InvalidParameterException("positions must not be negative");
+        }
+
+        ChatProperties.Session sessionProps = chatProperties.getSession();
+        int pageSize = limit != null
+                ? Math.max(1, Math.min(limit, sessionProps.getMaxMessagePageSize()))
+                : sessionProps.getMessagePageSize();
+
+        MessageWindow window;
+        int startIndex;
+        if (before != null) {
+            startIndex = Math.max(0, before - pageSize);
+            window = before == 0
+                    ? countOnlyWindow(sessionId)
+                    : findMessageWindowOrThrow(sessionId, startIndex, before - startIndex);
+        } else if (since != null) {
+            startIndex = since;
+            window = findMessageWindowOrThrow(sessionId, since, pageSize);
+        } else {
+            window = findMessageWindowOrThrow(sessionId, null, pageSize);
+            startIndex = window.getTotalMessages() - window.getMessages().size();
+        }
+
+        // Clamp positions past the end of history so the client can resume from totalMessages
+        startIndex = Math.min(startIndex, window.getTotalMessages());
+
+        return MessagePageResponse.builder()
+                .sessionId(sessionId)
+                .messages(window.getMessages())
+                .startIndex(startIndex)
+                .totalMessages(window.getTotalMessages())
+                .hasOlder(startIndex > 0)
+                .hasNewer(startIndex + window.getMessages().size() < window.getTotalMessages())
+                .build();
+    }
+
     /**
      * Delete a session
      */
@@ -117,7 +215,8 @@ public class ChatService {
             throw new ChatExceptions.SessionNotFoundException(sessionId);
         }
 
-        sessionRepository.delete(session);
+        hotSessions.evict(sessionId);
+        sessionRepository.deleteById(sessionId);
         log.info("Deleted session: {}", sessionId);
     }
 
@@ -130,6 +229,15 @@ public class ChatService {
         log.info("Processing message for session: {}, has images: {}",
                 request.getSessionId(), request.hasImages());
 
+        String userId = hotSessions.findOwner(request.getSessionId())
+                .orElseThrow(() -> new ChatExceptions.SessionNotFoundException(request.getSessionId()));
+        rateLimiter.acquire(userId, request);
+
+        // One turn per session at a time, so each turn sees the previous reply and appends stay in order
+        return turnLocks.withLock(request.getSessionId(), () -> processMessage(request));
+    }
+
+    private ChatResponse processMessage(ChatRequest request) {
         ChatSession session = findSessionOrThrow(request.getSessionId());
 
         // Check message limit
@@ -139,18 +247,24 @@ public class ChatService {
         }
 
         // Use request model if provided, otherwise use session's model
-        String model = request.getModel() != null ? request.getModel() : session.getSelectedModel();
-        if (!openRouterService.isValidModel(model)) {
-            throw new ChatExceptions.InvalidModelException(model);
+        String selectedModel = request.getModel() != null ? request.getModel() : session.getSelectedModel();
+        if (!openRouterService.isValidModel(selectedModel)) {
+            throw new ChatExceptions.InvalidModelException(selectedModel);
         }
 
         // Validate vision support if images are provided
-        List<ImageContent> images = request.getImages();
-        if (request.hasImages() && !openRouterService.supportsVision(model)) {
-            throw new ChatExceptions.VisionNotSupportedException(model);
+        if (request.hasImages() && !openRouterService.supportsVision(selectedModel)) {
+            throw new ChatExceptions.VisionNotSupportedException(selectedModel);
         }
 
+        // "auto" picks the healthiest model for this turn; the session keeps "auto"
+        String model = openRouterService.resolveModel(selectedModel, request.hasImages());
+
+        // Move image bytes to the image store; the message keeps only references
+        List<ImageContent> images = imageService.storeImages(request.getImages());
+
         // Add user message to history (including images if present)
+        String previousTitle = session.getTitle();
         ChatMessage userMessage = ChatMessage.builder()
                 .role("user")
                 .content(request.getMessage())
@@ -160,23 +274,30 @@ public class ChatService {
 
         // Get AI response (with images if present)
         ChatMessage assistantMessage = openRouterService.sendChatRequest(
+                session.getId(),
                 model,
-                session.getMessages().subList(0, session.getMessages().size() - 1),
+                conversationSummarizer.historyFor(session, session.getMessages().size() - 1),
                 request.getMessage(),
                 images
         );
-        assistantMessage.setModel(model);
+        // The model that answered, which differs when a fallback was used; unset for cached replies
+        if (assistantMessage.getModel() == null) {
+            assistantMessage.setModel(model);
+        }
 
         // Add assistant response to history
         session.addMessage(assistantMessage);
 
         // Update model if changed
         if (request.getModel() != null) {
-            session.setSelectedModel(model);
+            session.setSelectedModel(selectedModel);
         }
 
-        // Save session
-        session = sessionRepository.save(session);
+        // Append both messages; the hot-session cache writes them to MongoDB in the background
+        hotSessions.append(session, List.of(userMessage, assistantMessage),
+                generatedTitle(previousTitle, session), request.getModel());
+        rateLimiter.recordReply(session.getUserId(), assistantMessage.getContent());
+        conversationSummarizer.summarizeIfNeeded(session);
 
         log.info("Message processed for session: {}, total messages: {}",
                 session.getId(), session.getMessages().size());
@@ -184,7 +305,7 @@ public class ChatService {
         return ChatResponse.builder()
                 .sessionId(session.getId())
                 .assistantMessage(assistantMessage)
-                .model(model)
+                .model(assistantMessage.getModel())
                 .totalMessages(session.getMessages().size())
                 .build();
     }
@@ -193,68 +314,158 @@ public class ChatService {
      * Send a message and stream the response
      * Supports multi-modal messages with images
      */
-    @Observed(name = "chat.send-message-stream")
     public Flux<String> sendMessageStream(ChatRequest request) {
+        return sendMessageStream(request, () -> { });
+    }
+
+    /**
+     * Send a message and stream the response
+     *
+     * @param turnStarted run once the turn holds the session's lock, before the session is read
+     */
+    @Observed(name = "chat.send-message-stream")
+    public Flux<String> sendMessageStream(ChatRequest request, Runnable turnStarted) {
         log.info("Processing streaming message for session: {}, has images: {}",
                 request.getSessionId(), request.hasImages());
 
-        ChatSession session = findSessionOrThrow(request.getSessionId());
+        // Fully non-blocking: hot sessions come from memory, misses from the reactive repository.
+        // The session is read only once the previous turn has finished and is held until the reply is recorded.
+        // Rate limits are checked before queueing for the turn lock (the store may block)
+        return Flux.defer(() -> {
+            // Set once the reply is streaming; records the partial reply if the turn is cancelled
+            AtomicReference<Runnable> onCancel = new AtomicReference<>();
+            Mono<Void> recordPartial = Mono.<Void>fromRunnable(() -> {
+                Runnable record = onCancel.get();
+                if (record != null) {
+                    record.run();
+                }
+            }).subscribeOn(Schedulers.boundedElastic());
+
+            return hotSessions.findOwnerReactive(request.getSessionId())
+                    .switchIfEmpty(Mono.error(() -> new ChatExceptions.SessionNotFoundException(request.getSessionId())))
+                    .flatMap(userId -> Mono.fromRunnable(() -> rateLimiter.acquire(userId, request))
+                            .subscribeOn(Schedulers.boundedElastic()))
+                    .thenMany(turnLocks.withLock(request.getSessionId(), Flux.defer(() -> {
+                        turnStarted.run();
+                        return hotSessions.findByIdReactive(request.getSessionId())
+                                .switchIfEmpty(Mono.error(() -> new ChatExceptions.SessionNotFoundException(request.getSessionId())))
+                                .flatMapMany(session -> streamReply(session, request, onCancel));
+                    }), recordPartial));
+        });
+    }
 
+    private Flux<String> streamReply(ChatSession session, ChatRequest request, AtomicReference<Runnable> onCancel) {
         // Check message limit
         if (session.getMessages().size() >= chatProperties.getSession().getMaxMessagesPerSession()) {
             return Flux.error(new ChatExceptions.MessageLimitExceededException(
                     chatProperties.getSession().getMaxMessagesPerSession()));
         }
 
-        String model = request.getModel() != null ? request.getModel() : session.getSelectedModel();
-        if (!openRouterService.isValidModel(model)) {
-            return Flux.error(new ChatExceptions.InvalidModelException(model));
+        String selectedModel = request.getModel() != null ? request.getModel() : session.getSelectedModel();
+        if (!openRouterService.isValidModel(selectedModel)) {
+            return Flux.error(new ChatExceptions.InvalidModelException(selectedModel));
         }
 
         // Validate vision support if images are provided
-        List<ImageContent> images = request.getImages();
-        if (request.hasImages() && !openRouterService.supportsVision(model)) {
-            return Flux.error(new ChatExceptions.VisionNotSupportedException(model));
+        if (request.hasImages() && !openRouterService.supportsVision(selectedModel)) {
+            return Flux.error(new ChatExceptions.VisionNotSupportedException(selectedModel));
         }
 
-        // Add user message (including images if present)
-        ChatMessage userMessage = ChatMessage.builder()
-                .role("user")
-                .content(request.getMessage())
-                .images(images)
-                .build();
-        session.addMessage(userMessage);
+        // "auto" picks the healthiest model for this turn
+        String model;
+        try {
+            model = openRouterService.resolveModel(selectedModel, request.hasImages());
+        } catch (ChatExceptions.ModelUnavailableException e) {
+            return Flux.error(e);
+        }
+
+        // Move image bytes to the image store off the event loop; the message keeps only references
+        Mono<List<ImageContent>> storedImages = request.hasImages()
+                ? Mono.fromCallable(() -> imageService.storeImages(request.getImages()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                : Mono.just(List.of());
+
+        return storedImages.flatMapMany(stored -> {
+            List<ImageContent> images = stored.isEmpty() ? null : stored;
+
+            // Add user message (including images if present)
+            String previousTitle = session.getTitle();
+            ChatMessage userMessage = ChatMessage.builder()
+                    .role("user")
+                    .content(request.getMessage())
+                    .images(images)
+                    .build();
+            session.addMessage(userMessage);
+            String sessionId = session.getId();
+            List<ChatMessage> history = conversationSummarizer.historyFor(session, session.getMessages().size() - 1);
+
+            // Accumulates the response; a StringBuffer because a cancel may read it while chunks arrive
+            StringBuffer fullResponse = new StringBuffer();
+            // The model that answered, which differs when a fallback was used
+            AtomicReference<String> answeredBy = new AtomicReference<>(model);
+            // The reply is recorded once, complete or truncated, whichever comes first
+            AtomicBoolean recorded = new AtomicBoolean();
+            onCancel.set(() -> {
+                if (recorded.compareAndSet(false, true)) {
+                    saveTruncatedMessage(session, answeredBy.get(), fullResponse);
+                }
+            });
+
+            // Record the user message before streaming starts (in memory; flushed in the background)
+            hotSessions.append(session, List.of(userMessage), generatedTitle(previousTitle, session), null);
+
+            return Flux.defer(() -> openRouterService.sendChatRequestStream(
+                            sessionId, model, history, request.getMessage(), images, answeredBy::set))
+                    // Building the request may load and downscale stored images
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doOnNext(fullResponse::append)
+                    // A cancelled turn records the partial reply through onCancel, before the turn lock is released
+                    .concatWith(Mono.defer(() -> recorded.compareAndSet(false, true)
+                            ? saveAssistantMessage(session, answeredBy.get(), fullResponse)
+                            : Mono.empty()))
+                    .doOnError(e -> log.error("Streaming failed for session: {}", sessionId, e));
+        });
+    }
+
+    /**
+     * Append the complete assistant message once streaming is done, off the connection's event loop
+     */
+    private Mono<String> saveAssistantMessage(ChatSession session, String model, StringBuffer fullResponse) {
+        return Mono.<String>fromRunnable(() -> {
+            recordAssistantMessage(session, model, fullResponse.toString(), null);
+            log.info("Streaming complete for session: {}, saved {} chars", session.getId(), fullResponse.length());
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Keep what was generated before the stream was cancelled; the tokens are paid for either way
+     */
+    private void saveTruncatedMessage(ChatSession session, String model, StringBuffer fullResponse) {
+        String partial = fullResponse.toString();
+        long wastedTokens = TokenEstimator.estimate(partial);
+        meterRegistry.counter("chat.streams.cancelled", "model", model).increment();
+        meterRegistry.counter("chat.streams.cancelled.tokens", "model", model).increment(wastedTokens);
+
+        if (partial.isEmpty()) {
+            log.info("Streaming cancelled for session: {} before any content", session.getId());
+            return;
+        }
+        recordAssistantMessage(session, model, partial, true);
+        log.info("Streaming cancelled for session: {}, saved {} chars (~{} tokens) as truncated",
+                session.getId(), partial.length(), wastedTokens);
+    }
 
-        // Save session with user message
-        ChatSession savedSession = sessionRepository.save(session);
-        String sessionId = savedSession.getId();
-
-        // Create a StringBuilder to accumulate the response
-        StringBuilder fullResponse = new StringBuilder();
-
-        return openRouterService.sendChatRequestStream(
-                        model,
-                        savedSession.getMessages().subList(0, savedSession.getMessages().size() - 1),
-                        request.getMessage(),
-                        images
-                )
-                .doOnNext(fullResponse::append)
-                .doOnComplete(() -> {
-                    // Save the complete assistant message after streaming is done
-                    ChatSession currentSession = sessionRepository.findById(sessionId).orElse(null);
-                    if (currentSession != null) {
-                        ChatMessage assistantMessage = ChatMessage.builder()
-                                .role("assistant")
-                                .content(fullResponse.toString())
-                                .model(model)
-                                .build();
-                        currentSession.addMessage(assistantMessage);
-                        sessionRepository.save(currentSession);
-                        log.info("Streaming complete for session: {}, saved {} chars",
-                                sessionId, fullResponse.length());
-                    }
-                })
-                .doOnError(e -> log.error("Streaming failed for session: {}", sessionId, e));
+    private void recordAssistantMessage(ChatSession session, String model, String content, Boolean truncated) {
+        ChatMessage assistantMessage = ChatMessage.builder()
+                .role("assistant")
+                .content(content)
+                .model(model)
+                .truncated(truncated)
+                .build();
+        session.addMessage(assistantMessage);
+        hotSessions.append(session, List.of(assistantMessage), null, null);
+        rateLimiter.recordReply(session.getUserId(), content);
+        conversationSummarizer.summarizeIfNeeded(session);
     }
 
     /**
@@ -267,20 +478,71 @@ public class ChatService {
         }
 
         ChatSession session = findSessionOrThrow(sessionId);
+        if (!hotSessions.updateSelectedModel(sessionId, newModel)) {
+            throw new ChatExceptions.SessionNotFoundException(sessionId);
+        }
         session.setSelectedModel(newModel);
         session.setUpdatedAt(Instant.now());
-        session = sessionRepository.save(session);
 
         log.info("Updated model for session: {} to: {}", sessionId, newModel);
 
         return mapToSessionResponse(session);
     }
 
+    /**
+     * Returns the title auto-generated by {@link ChatSession#addMessage}, or null if it was already set
+     */
+    private String generatedTitle(String previousTitle, ChatSession session) {
+        return previousTitle == null ? session.getTitle() : null;
+    }
+
+    private MessageWindow findMessageWindowOrThrow(String sessionId, Integer offset, int count) {
+        return hotSessions.findMessageWindow(sessionId, offset, count)
+                .orElseThrow(() -> new ChatExceptions.SessionNotFoundException(sessionId));
+    }
+
+    private MessageWindow countOnlyWindow(String sessionId) {
+        MessageWindow window = findMessageWindowOrThrow(sessionId, 0, 1);
+        window.setMessages(List.of());
+        return window;
+    }
+
     private ChatSession findSessionOrThrow(String sessionId) {
-        return sessionRepository.findById(sessionId)
+        return hotSessions.findById(sessionId)
                 .orElseThrow(() -> new ChatExceptions.SessionNotFoundException(sessionId));
     }
 
+    private String encodeCursor(Instant updatedAt, String id) {
+        String raw = updatedAt.toEpochMilli() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 2);
+            if (parts.length != 2 || parts[1].isBlank()) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+            Long.parseLong(parts[0]);
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new ChatExceptions.InvalidCursorException(cursor);
+        }
+    }
+
+    private SessionResponse mapToSessionResponse(SessionSummary summary) {
+        return SessionResponse.builder()
+                .id(summary.getId())
+                .userId(summary.getUserId())
+                .title(summary.getTitle())
+                .selectedModel(summary.getSelectedModel())
+                .messageCount(summary.getMessageCount())
+                .createdAt(summary.getCreatedAt())
+                .updatedAt(summary.getUpdatedAt())
+                .build();
+    }
+
     private SessionResponse mapToSessionResponse(ChatSession session) {
         return SessionResponse.builder()
                 .id(session.getId())
@@ -0,0 +1,413 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.StreamCheckpoint;
+import com.example.madlen_demo2.repository.StreamCheckpointRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Runs streamed replies independently of the HTTP connection that started them, so a client
+ * whose connection drops can reconnect and pick up where it left off.
+ *
+ * Every chunk gets an SSE id of the form {@code <streamId>:<seq>}. The last chunks of each stream
+ * are kept in a bounded ring buffer; a reconnect with {@code Last-Event-ID} replays the chunks after
+ * that id and continues live. If those chunks have already left the buffer, the text up to the
+ * oldest buffered chunk is sent as one {@code snapshot} event first. The partial reply is also
+ * checkpointed to MongoDB at an interval, for reconnects after the stream has left memory.
+ *
+ * Other views of the same session can join the running stream of that session. All viewers share
+ * the single upstream generation and the single write of the finished reply.
+ *
+ * When the last viewer disconnects the generation is cancelled, which closes the upstream connection;
+ * what was generated so far can still be resumed. With {@code chat.streams.abandon-after} set, the
+ * generation instead keeps running for that long so a reconnect can continue it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatStreamRegistry {
+
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String DONE_EVENT = "done";
+    static final String ERROR_EVENT = "error";
+
+    private final StreamCheckpointRepository checkpointRepository;
+    private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ActiveStream> streams = new ConcurrentHashMap<>();
+
+    // Session id -> its stream while the reply is being generated
+    private final Map<String, ActiveStream> runningBySession = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("chat.streams.active", streams, Map::size)
+                .description("Streamed replies in memory, running or kept for reconnects")
+                .register(meterRegistry);
+        Gauge.builder("chat.streams.subscribers", streams,
+                        s -> s.values().stream().mapToInt(ActiveStream::subscriberCount).sum())
+                .description("Connections currently receiving a streamed reply")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start a streamed reply. The generation keeps running if the returned events are cancelled.
+     *
+     * @param generation builds the reply given a callback to run once its turn has started, i.e. once
+     *                   it holds the session's turn lock; only then do watchers of the session join it
+     * @return the events of the new stream from its first chunk; errors raised before the first
+     *         chunk are propagated so they are reported with their HTTP status
+     */
+    public Flux<ServerSentEvent<String>> start(String sessionId, Function<Runnable, Flux<String>> generation) {
+        ActiveStream stream = new ActiveStream(UUID.randomUUID().toString(), sessionId,
+                chatProperties.getStreams().getBufferChunks());
+        streams.put(stream.id, stream);
+        stream.upstream = generation.apply(stream::running).subscribe(stream::append, stream::fail, stream::complete);
+        log.debug("Started stream {} for session {}", stream.id, sessionId);
+        return events(stream, 0, true);
+    }
+
+    /**
+     * Reconnect to a stream, continuing after the given {@code Last-Event-ID}
+     * (everything is replayed when it is missing or belongs to another stream)
+     */
+    public Flux<ServerSentEvent<String>> resume(String streamId, String lastEventId) {
+        long lastSeq = parseSeq(streamId, lastEventId);
+        ActiveStream stream = streams.get(streamId);
+        if (stream != null) {
+            countResume("live");
+            return events(stream, lastSeq, false);
+        }
+
+        // The stream already left memory (or ran on another instance): send the last checkpoint
+        return checkpointRepository.findById(streamId)
+                .switchIfEmpty(Mono.error(() -> {
+                    countResume("missing");
+                    return new ChatExceptions.StreamNotFoundException(streamId);
+                }))
+                .flatMapMany(checkpoint -> {
+                    countResume("checkpoint");
+                    return Flux.fromIterable(checkpointEvents(checkpoint, lastSeq));
+                });
+    }
+
+    /**
+     * Join the reply currently being generated for a session, from its first chunk.
+     * Completes right away when no reply is in progress.
+     */
+    public Flux<ServerSentEvent<String>> watch(String sessionId) {
+        ActiveStream stream = runningBySession.get(sessionId);
+        if (stream == null) {
+            return Flux.empty();
+        }
+        meterRegistry.counter("chat.streams.joined").increment();
+        return events(stream, 0, false);
+    }
+
+    /**
+     * Drop finished streams once their reconnect window has passed
+     */
+    @Scheduled(fixedDelayString = "${chat.streams.sweep-interval:30s}")
+    public void evictExpired() {
+        Instant cutoff = Instant.now().minus(chatProperties.getStreams().getRetention());
+        streams.values().removeIf(stream -> stream.finishedBefore(cutoff));
+    }
+
+    private Flux<ServerSentEvent<String>> events(ActiveStream stream, long lastSeq, boolean initial) {
+        return Flux.defer(() -> {
+            AtomicBoolean first = new AtomicBoolean(true);
+            return stream.sink.asFlux()
+                    .filter(chunk -> chunk.seq() > lastSeq)
+                    // Delay errors so buffered chunks are still delivered when a finished stream failed
+                    .concatMapDelayError(chunk -> {
+                        if (first.getAndSet(false) && chunk.seq() > lastSeq + 1) {
+                            // The chunks right after lastSeq have left the ring buffer
+                            return Flux.just(event(stream.id, chunk.seq() - 1, SNAPSHOT_EVENT,
+                                    stream.textBefore(chunk.start())), chunkEvent(stream.id, chunk));
+                        }
+                        return Flux.just(chunkEvent(stream.id, chunk));
+                    })
+                    .concatWith(Mono.fromSupplier(() -> event(stream.id, stream.lastSeq(), DONE_EVENT, "")))
+                    .onErrorResume(e -> initial && stream.lastSeq() == 0
+                            ? Flux.error(e)
+                            : Flux.just(event(stream.id, stream.lastSeq(), ERROR_EVENT, errorMessage(e))))
+                    .doOnSubscribe(subscription -> stream.attach())
+                    .doFinally(signal -> stream.detach());
+        });
+    }
+
+    private List<ServerSentEvent<String>> checkpointEvents(StreamCheckpoint checkpoint, long lastSeq) {
+        String id = checkpoint.getId();
+        List<ServerSentEvent<String>> events = new ArrayList<>();
+        if (checkpoint.getLastSeq() > lastSeq) {
+            events.add(event(id, checkpoint.getLastSeq(), SNAPSHOT_EVENT, checkpoint.getContent()));
+        }
+        // A checkpoint still marked as streaming belongs to a generation that is gone or runs elsewhere
+        if (StreamCheckpoint.COMPLETED.equals(checkpoint.getStatus())) {
+            events.add(event(id, checkpoint.getLastSeq(), DONE_EVENT, ""));
+        } else if (StreamCheckpoint.FAILED.equals(checkpoint.getStatus())
+                || StreamCheckpoint.CANCELLED.equals(checkpoint.getStatus())) {
+            events.add(event(id, checkpoint.getLastSeq(), ERROR_EVENT, "The reply was interrupted"));
+        }
+        return events;
+    }
+
+    private static ServerSentEvent<String> chunkEvent(String streamId, Chunk chunk) {
+        return ServerSentEvent.<String>builder()
+                .id(streamId + ":" + chunk.seq())
+                .data(chunk.text())
+                .build();
+    }
+
+    private static ServerSentEvent<String> event(String streamId, long seq, String name, String data) {
+        return ServerSentEvent.<String>builder()
+                .id(streamId + ":" + seq)
+                .event(name)
+                .data(data)
+                .build();
+    }
+
+    private static String errorMessage(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Sequence number from a {@code <streamId>:<seq>} event id, or 0 if it is not one of this stream's ids
+     */
+    static long parseSeq(String streamId, String lastEventId) {
+        if (lastEventId == null || !lastEventId.startsWith(streamId + ":")) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.substring(streamId.length() + 1)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void countResume(String outcome) {
+        meterRegistry.counter("chat.streams.resumed", "outcome", outcome).increment();
+    }
+
+    /**
+     * A chunk and the offset of its first character in the reply
+     */
+    record Chunk(long seq, int start, String text) {
+    }
+
+    final class ActiveStream {
+
+        private final String id;
+        private final String sessionId;
+        // Ring buffer of the last chunks; late subscribers receive them before live chunks
+        private final Sinks.Many<Chunk> sink;
+        private final StringBuilder text = new StringBuilder();
+
+        private long seq;
+        private Instant finishedAt;
+        private String status = StreamCheckpoint.STREAMING;
+        private long lastCheckpointNanos = System.nanoTime();
+        private boolean checkpointRunning;
+        private boolean checkpointPending;
+        private int subscribers;
+        // Guarded by the sink's monitor, which also serializes all emissions
+        private boolean terminated;
+
+        volatile Disposable upstream;
+
+        ActiveStream(String id, String sessionId, int bufferChunks) {
+            this.id = id;
+            this.sessionId = sessionId;
+            this.sink = Sinks.many().replay().limit(bufferChunks);
+        }
+
+        void append(String chunk) {
+            Chunk next;
+            boolean checkpointDue;
+            synchronized (this) {
+                next = new Chunk(++seq, text.length(), chunk);
+                text.append(chunk);
+                long interval = chatProperties.getStreams().getCheckpointInterval().toNanos();
+                checkpointDue = System.nanoTime() - lastCheckpointNanos >= interval;
+            }
+            // Emitted outside the state lock: subscribers write to their connection on this thread
+            synchronized (sink) {
+                if (terminated) {
+                    return;
+                }
+                sink.emitNext(next, Sinks.EmitFailureHandler.FAIL_FAST);
+            }
+            if (checkpointDue) {
+                checkpoint();
+            }
+        }
+
+        void complete() {
+            terminate(StreamCheckpoint.COMPLETED, null);
+        }
+
+        void fail(Throwable error) {
+            terminate(StreamCheckpoint.FAILED, error);
+        }
+
+        /**
+         * The generation holds the session's turn, so this is the reply being produced for the session now
+         */
+        void running() {
+            runningBySession.put(sessionId, this);
+            synchronized (sink) {
+                if (terminated) {
+                    runningBySession.remove(sessionId, this);
+                }
+            }
+        }
+
+        synchronized void attach() {
+            subscribers++;
+        }
+
+        void detach() {
+            synchronized (this) {
+                if (--subscribers > 0 || finishedAt != null) {
+                    return;
+                }
+            }
+            Duration grace = chatProperties.getStreams().getAbandonAfter();
+            if (grace.isZero() || grace.isNegative()) {
+                abandonIfUnwatched();
+                return;
+            }
+            Mono.delay(grace).subscribe(tick -> abandonIfUnwatched());
+        }
+
+        /**
+         * Cancel the generation if nobody has reconnected during the grace period
+         */
+        private void abandonIfUnwatched() {
+            synchronized (this) {
+                if (subscribers > 0 || finishedAt != null) {
+                    return;
+                }
+            }
+            Disposable generation = upstream;
+            if (generation != null) {
+                generation.dispose();
+            }
+            if (terminate(StreamCheckpoint.CANCELLED,
+                    new CancellationException("The reply was stopped after all clients disconnected"))) {
+                log.info("Cancelled stream {} of session {}: no client reconnected", id, sessionId);
+            }
+        }
+
+        private boolean terminate(String finalStatus, Throwable error) {
+            synchronized (sink) {
+                if (terminated) {
+                    return false;
+                }
+                terminated = true;
+                finish(finalStatus);
+                if (error == null) {
+                    sink.emitComplete(Sinks.EmitFailureHandler.FAIL_FAST);
+                } else {
+                    sink.emitError(error, Sinks.EmitFailureHandler.FAIL_FAST);
+                }
+                return true;
+            }
+        }
+
+        private void finish(String finalStatus) {
+            boolean streamed;
+            synchronized (this) {
+                status = finalStatus;
+                finishedAt = Instant.now();
+                streamed = seq > 0;
+            }
+            runningBySession.remove(sessionId, this);
+            if (streamed) {
+                checkpoint();
+            }
+        }
+
+        int subscriberCount() {
+            return sink.currentSubscriberCount();
+        }
+
+        synchronized long lastSeq() {
+            return seq;
+        }
+
+        synchronized String textBefore(int offset) {
+            return text.substring(0, offset);
+        }
+
+        synchronized boolean finishedBefore(Instant cutoff) {
+            return finishedAt != null && finishedAt.isBefore(cutoff);
+        }
+
+        /**
+         * Write the current state. Writes of one stream never overlap, so a slow periodic
+         * checkpoint cannot overwrite the final one.
+         */
+        private void checkpoint() {
+            if (!chatProperties.getStreams().isCheckpoints()) {
+                return;
+            }
+            StreamCheckpoint checkpoint;
+            synchronized (this) {
+                if (checkpointRunning) {
+                    checkpointPending = true;
+                    return;
+                }
+                checkpointRunning = true;
+                lastCheckpointNanos = System.nanoTime();
+                checkpoint = StreamCheckpoint.builder()
+                        .id(id)
+                        .sessionId(sessionId)
+                        .content(text.toString())
+                        .lastSeq(seq)
+                        .status(status)
+                        .updatedAt(Instant.now())
+                        .build();
+            }
+            checkpointRepository.save(checkpoint)
+                    .doOnError(e -> log.warn("Failed to checkpoint stream {}: {}", id, e.getMessage()))
+                    .onErrorComplete()
+                    .doFinally(signal -> {
+                        boolean again;
+                        synchronized (this) {
+                            checkpointRunning = false;
+                            again = checkpointPending;
+                            checkpointPending = false;
+                        }
+                        if (again) {
+                            checkpoint();
+                        }
+                    })
+                    .subscribe();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Exact-match cache of assistant replies, keyed by a hash of the full upstream
+ * request body (model, message list, generation parameters). Opt-in through
+ * openrouter.cache.enabled; hit/miss/eviction counts are exported as
+ * cache.* metrics with cache=openrouter.completions.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CompletionCache {
+
+    private static final String CACHE_NAME = "openrouter.completions";
+
+    private final OpenRouterProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, String> cache;
+
+    @PostConstruct
+    void init() {
+        OpenRouterProperties.Cache config = properties.getCache();
+        cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public boolean isEnabled() {
+        return properties.getCache().isEnabled();
+    }
+
+    /**
+     * Cache key for a request; the stream flag is ignored so both endpoints share entries
+     */
+    String keyFor(CompletionRequestBody request) {
+        return request.digest();
+    }
+
+    public Optional<String> get(String key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.getIfPresent(key));
+    }
+
+    /**
+     * Store a finished reply. Truncated or failed generations are not cached.
+     */
+    public void put(String key, String content, String finishReason) {
+        if (!isEnabled() || content == null || content.isEmpty()) {
+            return;
+        }
+        if (finishReason != null && !"stop".equals(finishReason)) {
+            log.debug("Not caching completion that finished with {}", finishReason);
+            return;
+        }
+        cache.put(key, content);
+    }
+
+    /**
+     * Replay a cached reply as a stream of small chunks, so streaming clients
+     * see the same shape of response as a live generation
+     */
+    public Flux<String> replay(String content) {
+        int chunkSize = Math.max(1, properties.getCache().getReplayChunkSize());
+        List<String> chunks = new ArrayList<>(content.length() / chunkSize + 1);
+        int start = 0;
+        while (start < content.length()) {
+            int end = Math.min(content.length(), start + chunkSize);
+            // Don't split a surrogate pair across chunks
+            if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(content.substring(start, end));
+            start = end;
+        }
+        return Flux.fromIterable(chunks);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.madlen_demo2.service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A /chat/completions request body (same wire format as ChatCompletionRequest) held as
+ * pre-encoded JSON, one fragment per message. The body is written by concatenating the
+ * fragments, so history messages encoded for an earlier turn are not serialized again.
+ */
+final class CompletionRequestBody {
+
+    private static final byte[] MESSAGES_END = "]}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COMMA = {','};
+
+    private final String model;
+    private final List<byte[]> messages;
+    private final int maxTokens;
+    private final double temperature;
+
+    CompletionRequestBody(String model, List<byte[]> messages, int maxTokens, double temperature) {
+        this.model = model;
+        this.messages = messages;
+        this.maxTokens = maxTokens;
+        this.temperature = temperature;
+    }
+
+    /**
+     * Body as a sequence of buffers wrapping the fragments, without copying them
+     */
+    Flux<DataBuffer> encode(boolean stream) {
+        return Flux.fromIterable(parts(stream)).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    long contentLength(boolean stream) {
+        long length = 0;
+        for (byte[] part : parts(stream)) {
+            length += part.length;
+        }
+        return length;
+    }
+
+    /**
+     * SHA-256 over model, generation parameters and messages; the stream flag is not part of it
+     */
+    String digest() {
+        MessageDigest digest = newSha256();
+        digest.update(header(false));
+        for (byte[] message : messages) {
+            digest.update(COMMA);
+            digest.update(message);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private List<byte[]> parts(boolean stream) {
+        List<byte[]> parts = new ArrayList<>(messages.size() * 2 + 2);
+        parts.add(header(stream));
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                parts.add(COMMA);
+            }
+            parts.add(messages.get(i));
+        }
+        parts.add(MESSAGES_END);
+        return parts;
+    }
+
+    private byte[] header(boolean stream) {
+        return ("{\"model\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(model))
+                + "\",\"stream\":" + stream
+                + ",\"max_tokens\":" + maxTokens
+                + ",\"temperature\":" + temperature
+                + ",\"messages\":[").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
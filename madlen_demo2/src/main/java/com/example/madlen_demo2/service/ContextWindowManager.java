@@ -0,0 +1,139 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.model.AIModel;
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.ImageContent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fits the conversation history into a per-model token budget before it is sent upstream.
+ * Images are dropped from older turns first; after that, a sliding window keeps the newest
+ * messages that still fit, plus the first message of the session, which usually sets the topic.
+ * Tokens trimmed per request are recorded as chat.context.trimmed.tokens.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextWindowManager {
+
+    private static final String IMAGE_PLACEHOLDER = "[image omitted]";
+
+    private final ChatProperties chatProperties;
+    private final ModelRegistry modelRegistry;
+    private final ImageService imageService;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Select the part of the history to send along with the new user message
+     *
+     * @return the history messages to send, oldest first; messages whose images were
+     *         dropped are copies, the session's own messages are never modified
+     */
+    public List<ChatMessage> fit(String model, List<ChatMessage> history, String userMessage,
+                                 List<ImageContent> images) {
+        ChatProperties.Context config = chatProperties.getContext();
+        if (!config.isEnabled() || history.isEmpty()) {
+            return history;
+        }
+
+        int imageTokens = imageTokens(model);
+        int originalTokens = 0;
+        for (ChatMessage message : history) {
+            originalTokens += estimate(message.getContent(), message.hasImages() ? message.getImages().size() : 0, imageTokens);
+        }
+
+        List<ChatMessage> candidates = dropOldImages(history, config.getKeepImagesInLastMessages());
+
+        int budget = budgetFor(model)
+                - estimate(userMessage, images == null ? 0 : images.size(), imageTokens);
+
+        // The first message is pinned; the rest is filled from the newest message backwards
+        ChatMessage first = config.isKeepFirstMessage() ? candidates.get(0) : null;
+        int used = first != null ? estimate(first, imageTokens) : 0;
+        int oldestKept = candidates.size();
+        for (int i = candidates.size() - 1; i >= (first != null ? 1 : 0); i--) {
+            int cost = estimate(candidates.get(i), imageTokens);
+            if (used + cost > budget) {
+                break;
+            }
+            used += cost;
+            oldestKept = i;
+        }
+
+        List<ChatMessage> window = new ArrayList<>(candidates.size() - oldestKept + 1);
+        if (first != null && oldestKept > 0) {
+            window.add(first);
+        }
+        window.addAll(candidates.subList(oldestKept, candidates.size()));
+
+        int trimmed = Math.max(0, originalTokens - used);
+        DistributionSummary.builder("chat.context.trimmed.tokens")
+                .description("Estimated history tokens left out of an upstream request")
+                .baseUnit("tokens")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(trimmed);
+        if (trimmed > 0) {
+            log.debug("Context for model {}: kept {}/{} messages, trimmed ~{} tokens (budget {})",
+                    model, window.size(), history.size(), trimmed, budget);
+        }
+        return window;
+    }
+
+    /**
+     * Token budget for the prompt: the configured budget, capped by the model's context
+     * length (when the catalog reported one) minus the room reserved for the reply
+     */
+    int budgetFor(String model) {
+        ChatProperties.Context config = chatProperties.getContext();
+        int budget = config.getModelBudgets().getOrDefault(model, config.getDefaultBudgetTokens());
+        Integer contextLength = modelRegistry.find(model).map(AIModel::getContextLength).orElse(null);
+        if (contextLength != null && contextLength > 0) {
+            budget = Math.min(budget, contextLength - config.getReservedOutputTokens());
+        }
+        return Math.max(0, budget);
+    }
+
+    private List<ChatMessage> dropOldImages(List<ChatMessage> history, int keepImagesInLastMessages) {
+        List<ChatMessage> result = new ArrayList<>(history);
+        int imageMessagesSeen = 0;
+        for (int i = result.size() - 1; i >= 0; i--) {
+            ChatMessage message = result.get(i);
+            if (!message.hasImages()) {
+                continue;
+            }
+            if (++imageMessagesSeen > keepImagesInLastMessages) {
+                boolean hasText = message.getContent() != null && !message.getContent().isBlank();
+                result.set(i, ChatMessage.builder()
+                        .role(message.getRole())
+                        .content(hasText ? message.getContent() : IMAGE_PLACEHOLDER)
+                        .model(message.getModel())
+                        .timestamp(message.getTimestamp())
+                        .build());
+            }
+        }
+        return imageMessagesSeen > keepImagesInLastMessages ? result : Collections.unmodifiableList(history);
+    }
+
+    private int imageTokens(String model) {
+        ChatProperties.Context config = chatProperties.getContext();
+        return "low".equals(imageService.detailFor(model)) ? config.getLowDetailImageTokens() : config.getImageTokens();
+    }
+
+    private int estimate(ChatMessage message, int imageTokens) {
+        return estimate(message.getContent(), message.hasImages() ? message.getImages().size() : 0, imageTokens);
+    }
+
+    private int estimate(String text, int imageCount, int imageTokens) {
+        return TokenEstimator.MESSAGE_OVERHEAD + TokenEstimator.estimate(text) + imageCount * imageTokens;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.ChatSession;
+import com.example.madlen_demo2.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Condenses the older part of long sessions into a stored rolling summary.
+ * Runs after a turn has been saved, on its own virtual threads, so the user's
+ * request never waits for it. Upstream requests then carry the summary plus the
+ * recent turns instead of the full history.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private final ChatProperties chatProperties;
+    private final ChatSessionRepository sessionRepository;
+    private final OpenRouterService openRouterService;
+    private final HotSessionCache hotSessions;
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-summary-", 0).factory());
+
+    // Sessions with a summary run in progress; a session is never summarized twice at once
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * History to send upstream for the messages before {@code end}: the stored summary
+     * (as a system message) followed by the messages it doesn't cover yet
+     */
+    public List<ChatMessage> historyFor(ChatSession session, int end) {
+        List<ChatMessage> messages = session.getMessages();
+        int from = Math.min(session.getSummarizedCount(), end);
+        if (!StringUtils.hasText(session.getSummary()) || from == 0) {
+            return messages.subList(0, end);
+        }
+
+        List<ChatMessage> history = new ArrayList<>(end - from + 1);
+        history.add(ChatMessage.builder()
+                .role("system")
+                .content(SUMMARY_PREFIX + session.getSummary())
+                .build());
+        history.addAll(messages.subList(from, end));
+        return history;
+    }
+
+    /**
+     * Start a background summary run if enough messages piled up since the last one.
+     * Call with the session as it is after the turn was stored.
+     */
+    public void summarizeIfNeeded(ChatSession session) {
+        ChatProperties.Summary config = chatProperties.getSummary();
+        int total = session.getMessages().size();
+        int from = session.getSummarizedCount();
+        if (!config.isEnabled() || total - from < config.getTriggerMessages()) {
+            return;
+        }
+
+        int to = total - config.getKeepRecentMessages();
+        if (to <= from || !inFlight.add(session.getId())) {
+            return;
+        }
+
+        // Copy what the run needs now; the session object belongs to the request
+        String sessionId = session.getId();
+        String previousSummary = session.getSummary();
+        List<ChatMessage> messages = List.copyOf(session.getMessages().subList(from, to));
+        String model = StringUtils.hasText(config.getModel()) && openRouterService.isValidModel(config.getModel())
+                ? config.getModel()
+                : session.getSelectedModel();
+
+        executor.execute(() -> {
+            try {
+                String summary = openRouterService.summarize(openRouterService.resolveModel(model, false),
+                        previousSummary, messages, config.getMaxTokens());
+                if (summary.isEmpty()) {
+                    throw new IllegalStateException("empty summary");
+                }
+                Optional<Long> version = sessionRepository.updateSummary(sessionId, summary, to, from);
+                boolean stored = version.isPresent();
+                if (stored) {
+                    hotSessions.summaryStored(sessionId, summary, to, version.get());
+                }
+                meterRegistry.counter("chat.summary.runs", "outcome", stored ? "stored" : "superseded").increment();
+                log.info("Summarized messages [{}, {}) of session {} into {} chars", from, to, sessionId, summary.length());
+            } catch (Exception e) {
+                meterRegistry.counter("chat.summary.runs", "outcome", "failed").increment();
+                log.warn("Summary for session {} failed: {}", sessionId, e.getMessage());
+            } finally {
+                inFlight.remove(sessionId);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
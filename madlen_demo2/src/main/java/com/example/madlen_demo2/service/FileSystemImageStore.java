@@ -0,0 +1,93 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.model.StoredImage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores images on the local filesystem as {directory}/{first two hash chars}/{hash}.{extension}
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.images.store", havingValue = "filesystem")
+public class FileSystemImageStore implements ImageStore {
+
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png",
+            "image/gif", "gif",
+            "image/webp", "webp"
+    );
+
+    private final Path directory;
+
+    public FileSystemImageStore(ChatProperties chatProperties) {
+        this.directory = Path.of(chatProperties.getImages().getDirectory());
+    }
+
+    @Override
+    public boolean exists(String imageId) {
+        return findFile(imageId).isPresent();
+    }
+
+    @Override
+    public void save(String imageId, String mediaType, InputStream data) throws IOException {
+        if (exists(imageId)) {
+            log.debug("Image {} already stored, skipping write", imageId);
+            return;
+        }
+
+        Path target = shardDirectory(imageId).resolve(imageId + "." + EXTENSIONS.getOrDefault(mediaType, "bin"));
+        Files.createDirectories(target.getParent());
+
+        // Write to a temp file first so readers never see a partially written image
+        Path temp = Files.createTempFile(target.getParent(), imageId, ".tmp");
+        try {
+            Files.copy(data, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            log.debug("Image {} was stored concurrently", imageId);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public Optional<StoredImage> load(String imageId) {
+        return findFile(imageId).map(entry -> {
+            try {
+                return StoredImage.builder()
+                        .id(imageId)
+                        .mediaType(entry.getKey())
+                        .data(Files.readAllBytes(entry.getValue()))
+                        .build();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read image " + imageId, e);
+            }
+        });
+    }
+
+    private Optional<Map.Entry<String, Path>> findFile(String imageId) {
+        Path shard = shardDirectory(imageId);
+        return EXTENSIONS.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), shard.resolve(imageId + "." + e.getValue())))
+                .filter(e -> Files.exists(e.getValue()))
+                .findFirst();
+    }
+
+    private Path shardDirectory(String imageId) {
+        return directory.resolve(imageId.substring(0, 2));
+    }
+}
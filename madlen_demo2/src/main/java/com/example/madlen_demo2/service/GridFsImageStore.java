@@ -0,0 +1,112 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.model.StoredImage;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.gridfs.GridFsUpload;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Stores images in a dedicated GridFS bucket, using the content hash as filename.
+ * The filename carries a unique index (see MongoStorageInitializer), so two concurrent
+ * uploads of the same image leave a single copy behind.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.images.store", havingValue = "gridfs", matchIfMissing = true)
+public class GridFsImageStore implements ImageStore {
+
+    private static final String BUCKET = "chat_images";
+    public static final String FILES_COLLECTION = BUCKET + ".files";
+    private static final String CHUNKS_COLLECTION = BUCKET + ".chunks";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final MongoTemplate mongoTemplate;
+
+    public GridFsImageStore(MongoDatabaseFactory databaseFactory, MongoTemplate mongoTemplate) {
+        this.gridFsTemplate = new GridFsTemplate(databaseFactory, mongoTemplate.getConverter(), BUCKET);
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean exists(String imageId) {
+        return findFile(imageId) != null;
+    }
+
+    @Override
+    public void save(String imageId, String mediaType, InputStream data) throws IOException {
+        if (exists(imageId)) {
+            log.debug("Image {} already stored, skipping upload", imageId);
+            return;
+        }
+        // GridFS writes the chunks before the file document, so the id is chosen up front
+        // to be able to clean up the chunks when the file document is rejected
+        ObjectId fileId = new ObjectId();
+        try {
+            gridFsTemplate.store(GridFsUpload.fromStream(data)
+                    .id(fileId)
+                    .filename(imageId)
+                    .contentType(mediaType)
+                    .build());
+        } catch (RuntimeException e) {
+            deleteChunks(fileId);
+            if (!isDuplicateKey(e)) {
+                throw e;
+            }
+            // Another upload of the same content won the race; its copy is identical
+            log.debug("Image {} was stored concurrently, keeping the existing copy", imageId);
+        }
+    }
+
+    @Override
+    public Optional<StoredImage> load(String imageId) {
+        GridFSFile file = findFile(imageId);
+        if (file == null) {
+            return Optional.empty();
+        }
+
+        GridFsResource resource = gridFsTemplate.getResource(file);
+        try (InputStream in = resource.getInputStream()) {
+            return Optional.of(StoredImage.builder()
+                    .id(imageId)
+                    .mediaType(resource.getContentType())
+                    .data(in.readAllBytes())
+                    .build());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read image " + imageId, e);
+        }
+    }
+
+    private void deleteChunks(ObjectId fileId) {
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("files_id").is(fileId)), CHUNKS_COLLECTION);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete orphaned chunks of image file {}: {}", fileId, e.getMessage());
+        }
+    }
+
+    private static boolean isDuplicateKey(RuntimeException e) {
+        return e instanceof DuplicateKeyException
+                || (e instanceof MongoWriteException write && write.getError().getCategory() == ErrorCategory.DUPLICATE_KEY);
+    }
+
+    private GridFSFile findFile(String imageId) {
+        return gridFsTemplate.findOne(Query.query(Criteria.where("filename").is(imageId)));
+    }
+}
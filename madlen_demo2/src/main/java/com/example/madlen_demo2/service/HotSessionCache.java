@@ -0,0 +1,561 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.ChatSession;
+import com.example.madlen_demo2.model.MessageWindow;
+import com.example.madlen_demo2.repository.ChatSessionRepository;
+import com.example.madlen_demo2.repository.ReactiveChatSessionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory cache of recently used sessions in front of {@link ChatSessionRepository}.
+ * Reads of a hot session are served from memory. Appended messages are applied to the cached
+ * session at once and written to MongoDB in batches: after a number of appends, after a
+ * maximum delay, before any read that goes to the database, and on shutdown.
+ * Sessions with buffered writes stay reachable after LRU eviction until they are flushed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HotSessionCache {
+
+    private static final String CACHE_NAME = "chat.sessions.hot";
+
+    // Longest wait before a session whose writes keep failing is tried again
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofSeconds(30);
+
+    private final ChatSessionRepository sessionRepository;
+    private final ReactiveChatSessionRepository reactiveSessionRepository;
+    private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, HotSession> sessions;
+
+    // Sessions with appends not yet in MongoDB, including ones already evicted from the cache
+    private final Map<String, HotSession> dirty = new ConcurrentHashMap<>();
+
+    private final ExecutorService flushExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("session-flush-", 0).factory());
+
+    // Own thread for the sweep, so blocking @Scheduled jobs elsewhere can't delay time-based flushes
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("session-flush-sweep").daemon().factory());
+
+    private Timer flushLag;
+    private Counter flushFailures;
+    private Counter flushConflicts;
+
+    @PostConstruct
+    void init() {
+        ChatProperties.HotSessions config = chatProperties.getHotSessions();
+        sessions = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSessions())
+                .expireAfterAccess(config.getExpireAfterAccess())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, CACHE_NAME);
+
+        flushLag = Timer.builder("chat.sessions.flush.lag")
+                .description("Time from the first buffered append of a batch until it is written to MongoDB")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        flushFailures = meterRegistry.counter("chat.sessions.flush.failures");
+        flushConflicts = meterRegistry.counter("chat.sessions.flush.conflicts");
+        Gauge.builder("chat.sessions.pending.messages", dirty,
+                        d -> d.values().stream().mapToInt(HotSession::pendingCount).sum())
+                .description("Appended messages not yet written to MongoDB")
+                .register(meterRegistry);
+
+        long sweepMillis = Math.max(1, config.getSweepInterval().toMillis());
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Session by id, from memory when hot
+     *
+     * @return a copy the caller may modify; changes only take effect through {@link #append}
+     */
+    public Optional<ChatSession> findById(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId, this::load)).map(HotSession::snapshot);
+    }
+
+    /**
+     * Non-blocking variant of {@link #findById}; misses are loaded through the reactive repository
+     */
+    public Mono<ChatSession> findByIdReactive(String sessionId) {
+        return hotSessionReactive(sessionId).map(HotSession::snapshot);
+    }
+
+    /**
+     * Id of the user owning a session, without copying its messages
+     */
+    public Optional<String> findOwner(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId, this::load)).map(HotSession::userId);
+    }
+
+    /**
+     * Non-blocking variant of {@link #findOwner}
+     */
+    public Mono<String> findOwnerReactive(String sessionId) {
+        return hotSessionReactive(sessionId).map(HotSession::userId);
+    }
+
+    private Mono<HotSession> hotSessionReactive(String sessionId) {
+        HotSession hot = sessions.getIfPresent(sessionId);
+        if (hot == null) {
+            hot = dirty.get(sessionId);
+        }
+        if (hot != null) {
+            return Mono.just(cacheEntry(sessionId, hot));
+        }
+        return reactiveSessionRepository.findById(sessionId)
+                .map(session -> cacheEntry(sessionId, new HotSession(session)));
+    }
+
+    /**
+     * Window of messages as {@link ChatSessionRepository#findMessageWindow} would return it,
+     * sliced in memory when the session is hot
+     */
+    public Optional<MessageWindow> findMessageWindow(String sessionId, Integer offset, int count) {
+        HotSession hot = sessions.getIfPresent(sessionId);
+        if (hot == null) {
+            hot = dirty.get(sessionId);
+        }
+        if (hot == null) {
+            return sessionRepository.findMessageWindow(sessionId, offset, count);
+        }
+        return Optional.of(hot.window(offset, count));
+    }
+
+    /**
+     * Start caching a session that was just created
+     */
+    public void put(ChatSession session) {
+        sessions.put(session.getId(), new HotSession(session));
+    }
+
+    /**
+     * Append messages to a session. They are visible to readers of this cache immediately
+     * and written to MongoDB with the next flush.
+     *
+     * @param session       the caller's copy of the session, already containing the new messages;
+     *                      used as the cached state if the session was evicted in the meantime
+     * @param title         title to set, or null to leave it untouched
+     * @param selectedModel model to set, or null to leave it untouched
+     */
+    public void append(ChatSession session, List<ChatMessage> messages, String title, String selectedModel) {
+        String sessionId = session.getId();
+        HotSession hot = sessions.asMap().computeIfAbsent(sessionId, id -> {
+            HotSession pending = dirty.get(id);
+            return pending != null ? pending : new HotSession(session, messages.size());
+        });
+
+        int pending = hot.append(messages, title, selectedModel, dirty);
+        if (pending >= chatProperties.getHotSessions().getFlushAfterAppends()) {
+            scheduleFlush(hot);
+        }
+    }
+
+    /**
+     * Update the selected model of a session, keeping the cached copy in step
+     *
+     * @return false if the session does not exist
+     */
+    public boolean updateSelectedModel(String sessionId, String model) {
+        HotSession hot = sessions.getIfPresent(sessionId);
+        if (hot == null) {
+            flush(sessionId);
+            return sessionRepository.updateSelectedModel(sessionId, model).isPresent();
+        }
+        // Holding the flush lock keeps the write between two flushes, so the cached version can follow it
+        hot.flushLock.lock();
+        try {
+            flush(hot);
+            Optional<Long> version = sessionRepository.updateSelectedModel(sessionId, model);
+            if (version.isEmpty()) {
+                return false;
+            }
+            hot.setSelectedModel(model);
+            hot.followed(version.get());
+            return true;
+        } finally {
+            hot.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Reflect a rolling summary that was just stored in MongoDB
+     *
+     * @param version the session's version after the summary was stored
+     */
+    public void summaryStored(String sessionId, String summary, int summarizedCount, long version) {
+        HotSession hot = sessions.getIfPresent(sessionId);
+        if (hot == null) {
+            return;
+        }
+        hot.flushLock.lock();
+        try {
+            hot.setSummary(summary, summarizedCount);
+            hot.followed(version);
+        } finally {
+            hot.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Forget a session, dropping any buffered writes (used when it is deleted)
+     */
+    public void evict(String sessionId) {
+        sessions.invalidate(sessionId);
+        dirty.remove(sessionId);
+    }
+
+    /**
+     * Write buffered appends of one session now, e.g. before a read that bypasses the cache
+     */
+    public void flush(String sessionId) {
+        HotSession hot = dirty.get(sessionId);
+        if (hot != null) {
+            flush(hot);
+        }
+    }
+
+    /**
+     * Write buffered appends of all sessions of a user, before listing their sessions from MongoDB
+     */
+    public void flushUser(String userId) {
+        for (HotSession hot : dirty.values()) {
+            if (userId.equals(hot.userId())) {
+                flush(hot);
+            }
+        }
+    }
+
+    /**
+     * Flush sessions whose oldest buffered append has waited longer than the flush interval
+     */
+    public void flushDue() {
+        long maxDelayNanos = chatProperties.getHotSessions().getFlushInterval().toNanos();
+        long now = System.nanoTime();
+        for (HotSession hot : dirty.values()) {
+            if (now - hot.firstPendingNanos() >= maxDelayNanos) {
+                scheduleFlush(hot);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        sweeper.shutdownNow();
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Whatever is still buffered is written on this thread before MongoDB goes away
+        int sessionsLeft = dirty.size();
+        for (HotSession hot : dirty.values()) {
+            flush(hot);
+        }
+        if (sessionsLeft > 0) {
+            log.info("Flushed {} sessions on shutdown, {} could not be written", sessionsLeft, dirty.size());
+        }
+    }
+
+    private void sweep() {
+        try {
+            flushDue();
+        } catch (RuntimeException e) {
+            // An exception would cancel all later sweeps
+            log.warn("Session flush sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private HotSession load(String sessionId) {
+        HotSession pending = dirty.get(sessionId);
+        if (pending != null) {
+            return pending;
+        }
+        return sessionRepository.findById(sessionId).map(HotSession::new).orElse(null);
+    }
+
+    private HotSession cacheEntry(String sessionId, HotSession hot) {
+        return sessions.asMap().computeIfAbsent(sessionId, id -> hot);
+    }
+
+    /**
+     * Flush a session in the background, unless a flush is already queued or it is backing off after a failure
+     */
+    private void scheduleFlush(HotSession hot) {
+        if (System.nanoTime() - hot.retryAtNanos < 0 || !hot.flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flushExecutor.execute(() -> {
+                try {
+                    flush(hot);
+                } finally {
+                    hot.flushScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down: write on the caller's thread instead
+            hot.flushScheduled.set(false);
+            flush(hot);
+        }
+    }
+
+    private void flush(HotSession hot) {
+        // One flush per session at a time keeps batches in append order
+        hot.flushLock.lock();
+        try {
+            Batch batch = hot.drain();
+            if (batch == null) {
+                return;
+            }
+            try {
+                Optional<Long> version = sessionRepository.appendMessages(hot.sessionId,
+                        batch.messages(), batch.title(), batch.selectedModel(), batch.expectedVersion());
+                if (version.isPresent()) {
+                    hot.flushed(version.get());
+                } else {
+                    retryAfterConflict(hot, batch);
+                }
+                flushLag.record(System.nanoTime() - batch.firstPendingNanos(), TimeUnit.NANOSECONDS);
+                hot.failedFlushes = 0;
+                hot.retryAtNanos = System.nanoTime();
+            } catch (RuntimeException e) {
+                hot.requeue(batch);
+                flushFailures.increment();
+                Duration backoff = retryBackoff(++hot.failedFlushes);
+                hot.retryAtNanos = System.nanoTime() + backoff.toNanos();
+                log.warn("Flushing session {} failed, retrying in {}: {}", hot.sessionId, backoff, e.getMessage());
+            }
+            hot.markCleanIfFlushed(dirty);
+        } finally {
+            hot.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Doubles with every failed flush in a row, starting at the flush interval
+     */
+    private Duration retryBackoff(int failures) {
+        Duration backoff = chatProperties.getHotSessions().getFlushInterval().multipliedBy(1L << Math.min(failures - 1, 16));
+        return backoff.compareTo(MAX_RETRY_BACKOFF) > 0 ? MAX_RETRY_BACKOFF : backoff;
+    }
+
+    /**
+     * The session was written elsewhere since it was cached (another instance, or a model or summary
+     * update). Re-apply just this batch on top of the current document and adopt that document.
+     */
+    private void retryAfterConflict(HotSession hot, Batch batch) {
+        flushConflicts.increment();
+        int maxRetries = chatProperties.getTurns().getMaxConflictRetries();
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            Optional<ChatSession> current = sessionRepository.findById(hot.sessionId);
+            if (current.isEmpty()) {
+                log.warn("Session {} no longer exists, dropped {} buffered messages",
+                        hot.sessionId, batch.messages().size());
+                sessions.invalidate(hot.sessionId);
+                return;
+            }
+            Optional<Long> version = sessionRepository.appendMessages(hot.sessionId,
+                    batch.messages(), batch.title(), batch.selectedModel(), current.get().getVersion());
+            if (version.isPresent()) {
+                hot.resync(current.get(), batch, version.get());
+                log.debug("Session {} changed concurrently, re-applied {} messages on attempt {}",
+                        hot.sessionId, batch.messages().size(), attempt);
+                return;
+            }
+        }
+        throw new OptimisticLockingFailureException(
+                "Session " + hot.sessionId + " kept changing during " + maxRetries + " append attempts");
+    }
+
+    private record Batch(List<ChatMessage> messages, String title, String selectedModel,
+                         Long expectedVersion, long firstPendingNanos) {
+    }
+
+    /**
+     * Cached state of one session plus the appends not written yet; guarded by its own monitor
+     */
+    private static final class HotSession {
+
+        private final String sessionId;
+        private final ChatSession session;
+        private final ReentrantLock flushLock = new ReentrantLock();
+        // A background flush is queued or running; sweeps don't queue another one
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        // Background flushes wait until then after a failure; failedFlushes is guarded by flushLock
+        private volatile long retryAtNanos = System.nanoTime();
+        private int failedFlushes;
+
+        private List<ChatMessage> pending = new ArrayList<>();
+        private String pendingTitle;
+        private String pendingModel;
+        private long firstPendingNanos;
+
+        HotSession(ChatSession session) {
+            this(session, 0);
+        }
+
+        /**
+         * @param alreadyApplied trailing messages of {@code session} that are about to be passed to append
+         */
+        HotSession(ChatSession session, int alreadyApplied) {
+            this.sessionId = session.getId();
+            List<ChatMessage> messages = session.getMessages() == null ? List.of() : session.getMessages();
+            this.session = session.toBuilder()
+                    .messages(new ArrayList<>(messages.subList(0, messages.size() - alreadyApplied)))
+                    .build();
+        }
+
+        synchronized ChatSession snapshot() {
+            return session.toBuilder().messages(new ArrayList<>(session.getMessages())).build();
+        }
+
+        synchronized String userId() {
+            return session.getUserId();
+        }
+
+        synchronized MessageWindow window(Integer offset, int count) {
+            List<ChatMessage> messages = session.getMessages();
+            int total = messages.size();
+            int from = offset != null ? Math.min(offset, total) : Math.max(0, total - count);
+            int to = Math.min(total, from + count);
+            return MessageWindow.builder()
+                    .messages(new ArrayList<>(messages.subList(from, to)))
+                    .totalMessages(total)
+                    .build();
+        }
+
+        synchronized int append(List<ChatMessage> messages, String title, String selectedModel,
+                                Map<String, HotSession> dirty) {
+            session.getMessages().addAll(messages);
+            session.setUpdatedAt(Instant.now());
+            if (title != null) {
+                session.setTitle(title);
+                pendingTitle = title;
+            }
+            if (selectedModel != null) {
+                session.setSelectedModel(selectedModel);
+                pendingModel = selectedModel;
+            }
+            if (pending.isEmpty()) {
+                firstPendingNanos = System.nanoTime();
+            }
+            pending.addAll(messages);
+            dirty.put(sessionId, this);
+            return pending.size();
+        }
+
+        synchronized Batch drain() {
+            if (pending.isEmpty() && pendingTitle == null && pendingModel == null) {
+                return null;
+            }
+            Batch batch = new Batch(pending, pendingTitle, pendingModel, session.getVersion(), firstPendingNanos);
+            pending = new ArrayList<>();
+            pendingTitle = null;
+            pendingModel = null;
+            return batch;
+        }
+
+        synchronized void requeue(Batch batch) {
+            List<ChatMessage> merged = new ArrayList<>(batch.messages());
+            merged.addAll(pending);
+            pending = merged;
+            if (pendingTitle == null) {
+                pendingTitle = batch.title();
+            }
+            if (pendingModel == null) {
+                pendingModel = batch.selectedModel();
+            }
+            firstPendingNanos = batch.firstPendingNanos();
+        }
+
+        synchronized void flushed(long version) {
+            session.setVersion(version);
+        }
+
+        /**
+         * Adopt the version of a write made next to the buffer, but only if it came right after the
+         * cached one; otherwise something else wrote in between and the next flush has to resync
+         */
+        synchronized void followed(long version) {
+            if (session.getVersion() != null && session.getVersion() == version - 1) {
+                session.setVersion(version);
+            }
+        }
+
+        /**
+         * Adopt the current document plus the batch that was just appended to it,
+         * keeping appends that arrived while the batch was being written
+         */
+        synchronized void resync(ChatSession current, Batch batch, long version) {
+            List<ChatMessage> messages = new ArrayList<>(current.getMessages());
+            messages.addAll(batch.messages());
+            messages.addAll(pending);
+            session.setMessages(messages);
+            session.setTitle(pendingTitle != null ? pendingTitle
+                    : batch.title() != null ? batch.title() : current.getTitle());
+            session.setSelectedModel(pendingModel != null ? pendingModel
+                    : batch.selectedModel() != null ? batch.selectedModel() : current.getSelectedModel());
+            session.setSummary(current.getSummary());
+            session.setSummarizedCount(current.getSummarizedCount());
+            session.setVersion(version);
+        }
+
+        synchronized void markCleanIfFlushed(Map<String, HotSession> dirty) {
+            if (pending.isEmpty() && pendingTitle == null && pendingModel == null) {
+                dirty.remove(sessionId, this);
+            }
+        }
+
+        synchronized int pendingCount() {
+            return pending.size();
+        }
+
+        synchronized long firstPendingNanos() {
+            return firstPendingNanos;
+        }
+
+        synchronized void setSelectedModel(String model) {
+            session.setSelectedModel(model);
+        }
+
+        synchronized void setSummary(String summary, int summarizedCount) {
+            if (summarizedCount > session.getSummarizedCount()) {
+                session.setSummary(summary);
+                session.setSummarizedCount(summarizedCount);
+            }
+        }
+    }
+}
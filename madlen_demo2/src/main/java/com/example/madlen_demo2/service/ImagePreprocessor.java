@@ -0,0 +1,191 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.StoredImage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Downscales and re-encodes stored images to JPEG before they are sent to a vision model.
+ * Each variant is stored in the {@link ImageStore} under a hash of the original id and the
+ * profile settings, so an image in the history is processed only once per profile.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImagePreprocessor {
+
+    private final ImageStore imageStore;
+    private final ChatProperties chatProperties;
+
+    /**
+     * Get the profile used for a model
+     */
+    public ChatProperties.ImageProfile profileFor(String model) {
+        ChatProperties.Preprocessing preprocessing = chatProperties.getImages().getPreprocessing();
+        String profileName = preprocessing.getModelProfiles()
+                .getOrDefault(model, preprocessing.getDefaultProfile());
+        ChatProperties.ImageProfile profile = preprocessing.getProfiles().get(profileName);
+        return profile != null ? profile : new ChatProperties.ImageProfile();
+    }
+
+    /**
+     * Get the variant of a stored image for a model, creating it on first use.
+     * Falls back to the original when preprocessing is disabled, the format cannot be decoded or
+     * re-encoding would not make it smaller.
+     *
+     * @throws ChatExceptions.InvalidImageException if the image has more pixels than allowed
+     */
+    public StoredImage prepare(StoredImage original, String model) {
+        if (!chatProperties.getImages().getPreprocessing().isEnabled() || "image/gif".equals(original.getMediaType())) {
+            return original;
+        }
+
+        ChatProperties.ImageProfile profile = profileFor(model);
+        String variantId = variantId(original.getId(), profile);
+
+        Optional<StoredImage> cached = imageStore.load(variantId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        Optional<StoredImage> variant = transform(original, variantId, profile);
+        if (variant.isEmpty()) {
+            return original;
+        }
+
+        try {
+            imageStore.save(variantId, variant.get().getMediaType(), new ByteArrayInputStream(variant.get().getData()));
+        } catch (IOException e) {
+            log.warn("Failed to cache image variant {}: {}", variantId, e.getMessage());
+        }
+        return variant.get();
+    }
+
+    /**
+     * @return the variant to cache, or empty to send the original without caching
+     */
+    private Optional<StoredImage> transform(StoredImage original, String variantId, ChatProperties.ImageProfile profile) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(original.getData()))) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                // No ImageIO reader for this format (e.g. WebP): the header probe is cheap, so don't cache
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+
+                // Check the size from the header before any pixels are decoded; a small file can hold a huge raster
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                long maxPixels = chatProperties.getImages().getPreprocessing().getMaxPixels();
+                if ((long) width * height > maxPixels) {
+                    log.warn("Image {} is {}x{} pixels, above the limit of {}", original.getId(), width, height, maxPixels);
+                    throw new ChatExceptions.InvalidImageException(
+                            width + "x" + height + " pixels is more than the " + maxPixels + " pixel limit");
+                }
+
+                // Decode only every n-th pixel of large images, keeping at least maxEdge on the longest side
+                int longest = Math.max(width, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / Math.max(1, profile.getMaxEdge()));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage source = reader.read(0, param);
+
+                byte[] encoded = encodeJpeg(scale(source, profile.getMaxEdge()), profile.getQuality());
+
+                // Never send a larger payload than the original; it is already stored, so keep no second copy
+                if (encoded.length >= original.getData().length && longest <= profile.getMaxEdge()) {
+                    return Optional.empty();
+                }
+
+                log.debug("Preprocessed image {}: {} -> {} bytes", original.getId(), original.getData().length, encoded.length);
+                return Optional.of(copyAs(original, variantId, encoded, "image/jpeg"));
+            } finally {
+                reader.dispose();
+            }
+        } catch (ChatExceptions.InvalidImageException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Image preprocessing failed for {}, sending original: {}", original.getId(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Scale so the longest edge is at most maxEdge, flattening transparency onto white for JPEG
+     */
+    private BufferedImage scale(BufferedImage source, int maxEdge) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        double ratio = longest > maxEdge ? (double) maxEdge / longest : 1.0;
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.max(0f, Math.min(1f, quality)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private StoredImage copyAs(StoredImage original, String variantId, byte[] data, String mediaType) {
+        return StoredImage.builder()
+                .id(variantId)
+                .mediaType(mediaType != null ? mediaType : original.getMediaType())
+                .data(data)
+                .build();
+    }
+
+    private String variantId(String imageId, ChatProperties.ImageProfile profile) {
+        String key = imageId + "|" + profile.getMaxEdge() + "|" + profile.getQuality();
+        return ImageService.sha256(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.dto.ImageUploadResponse;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.ImageContent;
+import com.example.madlen_demo2.model.StoredImage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Moves chat images out of session documents into the {@link ImageStore}.
+ * Messages only keep a reference; bytes are loaded when building the upstream request.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageService {
+
+    private static final Pattern IMAGE_ID = Pattern.compile("[0-9a-f]{64}");
+
+    // Bytes needed to recognize every supported format (WEBP needs 12)
+    private static final int MAGIC_HEADER_LENGTH = 12;
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final ImageStore imageStore;
+    private final ImagePreprocessor imagePreprocessor;
+    private final ChatProperties chatProperties;
+
+    /**
+     * Validate images before they are stored or sent to the API
+     */
+    public void validateImages(List<ImageContent> images) {
+        long maxBytes = chatProperties.getImages().getMaxSizeBytes();
+        for (ImageContent image : images) {
+            if (!image.isValid()) {
+                throw new ChatExceptions.InvalidImageException("Invalid image format or missing data");
+            }
+
+            // Check base64 size (rough estimate)
+            if ("base64".equals(image.getType())) {
+                long estimatedSize = (long) (image.getData().length() * 0.75);
+                if (estimatedSize > maxBytes) {
+                    throw new ChatExceptions.ImageTooLargeException(maxBytes);
+                }
+            }
+
+            if ("ref".equals(image.getType()) && !isValidImageId(image.getImageId())) {
+                throw new ChatExceptions.InvalidImageException("Unknown image reference");
+            }
+        }
+    }
+
+    /**
+     * Store inline base64 images and replace them with references.
+     * URL images and existing references are kept as they are.
+     */
+    public List<ImageContent> storeImages(List<ImageContent> images) {
+        if (images == null || images.isEmpty()) {
+            return images;
+        }
+        validateImages(images);
+
+        List<ImageContent> stored = new ArrayList<>(images.size());
+        for (ImageContent image : images) {
+            if ("base64".equals(image.getType())) {
+                stored.add(storeBase64(image));
+            } else if ("ref".equals(image.getType())) {
+                if (!imageStore.exists(image.getImageId())) {
+                    throw new ChatExceptions.InvalidImageException("Unknown image reference");
+                }
+                stored.add(image);
+            } else {
+                stored.add(image);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Stream an uploaded image into the store in bounded chunks.
+     * The format is detected from magic bytes as soon as the header arrives and the
+     * size limit is enforced while reading, so oversized or non-image uploads are
+     * rejected without buffering the whole body in memory.
+     *
+     * @param declaredMediaType Content-Type sent by the client, checked against the detected format
+     * @return the id to reference the stored image with
+     */
+    public ImageUploadResponse ingest(InputStream in, String declaredMediaType) {
+        long maxBytes = chatProperties.getImages().getMaxSizeBytes();
+        MessageDigest digest = newSha256();
+        Path temp = null;
+
+        try {
+            temp = Files.createTempFile("chat-image-", ".upload");
+            byte[] buffer = new byte[CHUNK_SIZE];
+            byte[] header = new byte[MAGIC_HEADER_LENGTH];
+            int headerLength = 0;
+            String mediaType = null;
+            long total = 0;
+
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxBytes) {
+                        throw new ChatExceptions.ImageTooLargeException(maxBytes);
+                    }
+
+                    if (mediaType == null) {
+                        int copy = Math.min(read, MAGIC_HEADER_LENGTH - headerLength);
+                        System.arraycopy(buffer, 0, header, headerLength, copy);
+                        headerLength += copy;
+                        if (headerLength == MAGIC_HEADER_LENGTH) {
+                            mediaType = detectMediaType(header, declaredMediaType);
+                        }
+                    }
+
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (total == 0) {
+                throw new ChatExceptions.InvalidImageException("Image is empty");
+            }
+            if (mediaType == null) {
+                mediaType = detectMediaType(Arrays.copyOf(header, headerLength), declaredMediaType);
+            }
+
+            String imageId = HexFormat.of().formatHex(digest.digest());
+            try (InputStream stored = Files.newInputStream(temp)) {
+                imageStore.save(imageId, mediaType, stored);
+            }
+
+            log.debug("Uploaded image {} ({} bytes, {})", imageId, total, mediaType);
+            return ImageUploadResponse.builder()
+                    .imageId(imageId)
+                    .mediaType(mediaType)
+                    .sizeBytes(total)
+                    .build();
+        } catch (IOException e) {
+            log.error("Failed to store uploaded image", e);
+            throw new ChatExceptions.InvalidImageException("Image could not be stored");
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Resolve an image to the URL sent to a model: a data URI for stored
+     * and inline images, or the original URL for URL images.
+     * Stored images are downscaled for the model's profile first.
+     */
+    public String toImageUrl(ImageContent image, String model) {
+        return switch (image.getType()) {
+            case "ref" -> {
+                StoredImage stored = load(image.getImageId())
+                        .map(original -> imagePreprocessor.prepare(original, model))
+                        .orElseThrow(() -> new ChatExceptions.InvalidImageException(
+                                "Stored image not found: " + image.getImageId()));
+                yield "data:" + stored.getMediaType() + ";base64,"
+                        + Base64.getEncoder().encodeToString(stored.getData());
+            }
+            case "base64" -> "data:" + image.getMediaType() + ";base64," + image.getData();
+            default -> image.getData();
+        };
+    }
+
+    /**
+     * Detail hint ("auto", "low" or "high") to send with images for a model
+     */
+    public String detailFor(String model) {
+        return imagePreprocessor.profileFor(model).getDetail();
+    }
+
+    public Optional<StoredImage> load(String imageId) {
+        if (!isValidImageId(imageId)) {
+            return Optional.empty();
+        }
+        return imageStore.load(imageId);
+    }
+
+    private ImageContent storeBase64(ImageContent image) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(image.getData());
+        } catch (IllegalArgumentException e) {
+            throw new ChatExceptions.InvalidImageException("Image data is not valid base64");
+        }
+
+        String mediaType = detectMediaType(
+                Arrays.copyOf(bytes, Math.min(bytes.length, MAGIC_HEADER_LENGTH)), image.getMediaType());
+        String imageId = sha256(bytes);
+        try {
+            imageStore.save(imageId, mediaType, new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            log.error("Failed to store image {}", imageId, e);
+            throw new ChatExceptions.InvalidImageException("Image could not be stored");
+        }
+
+        log.debug("Stored image {} ({} bytes, {})", imageId, bytes.length, mediaType);
+        return ImageContent.fromRef(imageId, mediaType);
+    }
+
+    /**
+     * Detect the image format from its leading bytes. A declared image type that
+     * contradicts the content is rejected; generic types like application/octet-stream are ignored.
+     */
+    static String detectMediaType(byte[] header, String declaredMediaType) {
+        String detected = null;
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            detected = "image/jpeg";
+        } else if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            detected = "image/png";
+        } else if (startsWith(header, 0, 'G', 'I', 'F', '8')) {
+            detected = "image/gif";
+        } else if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+            detected = "image/webp";
+        }
+
+        if (detected == null) {
+            throw new ChatExceptions.InvalidImageException("Unsupported image format");
+        }
+        if (declaredMediaType != null && declaredMediaType.startsWith("image/")
+                && !declaredMediaType.equals(detected)) {
+            throw new ChatExceptions.InvalidImageException(
+                    "Content is " + detected + " but was declared as " + declaredMediaType);
+        }
+        return detected;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... expected) {
+        if (data.length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((data[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteQuietly(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary upload {}", temp);
+        }
+    }
+
+    private boolean isValidImageId(String imageId) {
+        return imageId != null && IMAGE_ID.matcher(imageId).matches();
+    }
+
+    static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(newSha256().digest(bytes));
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.model.StoredImage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Content-addressed storage for chat images.
+ * Images are keyed by the SHA-256 of their bytes, so saving the same image twice is a no-op.
+ */
+public interface ImageStore {
+
+    boolean exists(String imageId);
+
+    /**
+     * Store image bytes under the given id unless an image with that id already exists
+     */
+    void save(String imageId, String mediaType, InputStream data) throws IOException;
+
+    Optional<StoredImage> load(String imageId);
+}
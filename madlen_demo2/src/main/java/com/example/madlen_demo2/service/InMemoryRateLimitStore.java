@@ -0,0 +1,63 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps buckets in memory, limits apply per instance.
+ * Each bucket is updated with compare-and-set, so requests of different users never contend.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.rate-limit.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final Cache<String, AtomicReference<State>> buckets;
+
+    public InMemoryRateLimitStore(ChatProperties chatProperties) {
+        ChatProperties.RateLimit config = chatProperties.getRateLimit();
+        // An idle bucket is full again after a while, so dropping it loses nothing
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(config.getMaxTrackedKeys())
+                .expireAfterAccess(config.getIdleExpiry())
+                .build();
+    }
+
+    @Override
+    public Duration tryAcquire(String key, Bucket bucket, long permits) {
+        AtomicReference<State> ref = stateOf(key, bucket);
+        while (true) {
+            State current = ref.get();
+            long now = System.nanoTime();
+            double available = bucket.refill(current.tokens(), now - current.refilledAt());
+            if (available < permits) {
+                return bucket.timeUntil(available, permits);
+            }
+            if (ref.compareAndSet(current, new State(available - permits, now))) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    @Override
+    public void consume(String key, Bucket bucket, long permits) {
+        AtomicReference<State> ref = stateOf(key, bucket);
+        ref.updateAndGet(current -> {
+            long now = System.nanoTime();
+            double available = bucket.refill(current.tokens(), now - current.refilledAt());
+            return new State(Math.min(bucket.capacity(), available - permits), now);
+        });
+    }
+
+    private AtomicReference<State> stateOf(String key, Bucket bucket) {
+        return buckets.get(key, k -> new AtomicReference<>(new State(bucket.capacity(), System.nanoTime())));
+    }
+
+    private record State(double tokens, long refilledAt) {
+    }
+}
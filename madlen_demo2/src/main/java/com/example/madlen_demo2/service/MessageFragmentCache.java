@@ -0,0 +1,91 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.dto.OpenRouterDtos.Message;
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.ImageContent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Encoded JSON of history messages, so each stored message is turned into
+ * Message/ContentPart objects, image data URIs and JSON only once rather than on
+ * every turn. Stored messages never change, so entries need no invalidation: the
+ * key is the session id plus a digest of the message itself (and the model, for
+ * messages with images, since image preprocessing depends on it). Bounded by total bytes and idle time.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageFragmentCache {
+
+    private static final String CACHE_NAME = "openrouter.message-fragments";
+
+    private final OpenRouterProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, byte[]> cache;
+
+    @PostConstruct
+    void init() {
+        OpenRouterProperties.Fragments config = properties.getFragments();
+        cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxBytes())
+                .weigher((String key, byte[] fragment) -> fragment.length)
+                .expireAfterAccess(config.getExpireAfterAccess())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Encoded JSON for a history message of a session, built with {@code toMessage} on a miss
+     */
+    byte[] fragmentFor(String sessionId, String model, ChatMessage message, Function<ChatMessage, Message> toMessage) {
+        // System messages (the rolling summary) are built per request and small; not worth keeping
+        if (!properties.getFragments().isEnabled() || "system".equals(message.getRole())) {
+            return encode(toMessage.apply(message));
+        }
+        return cache.get(keyFor(sessionId, model, message), key -> encode(toMessage.apply(message)));
+    }
+
+    byte[] encode(Message message) {
+        try {
+            return objectMapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode message", e);
+        }
+    }
+
+    private String keyFor(String sessionId, String model, ChatMessage message) {
+        // Entries are shared by all sessions; a digest rather than hashCode makes sure no other message can match
+        StringBuilder key = new StringBuilder(192)
+                .append(sessionId).append('|')
+                .append(message.getRole()).append('|')
+                // MongoDB keeps millisecond precision, so the in-memory and reloaded copies match
+                .append(message.getTimestamp() == null ? 0 : message.getTimestamp().toEpochMilli()).append('|')
+                .append(digest(message.getContent()));
+        if (message.isMultiModal()) {
+            key.append('|').append(model);
+            for (ImageContent image : message.getImages()) {
+                key.append('|').append(image.getType()).append(':')
+                        .append(image.getImageId() != null ? image.getImageId() : digest(image.getData()));
+            }
+        }
+        return key.toString();
+    }
+
+    private static String digest(String value) {
+        return value == null ? "-" : ImageService.sha256(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
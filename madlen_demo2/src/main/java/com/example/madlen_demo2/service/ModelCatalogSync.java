@@ -0,0 +1,201 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.dto.OpenRouterDtos.ModelInfo;
+import com.example.madlen_demo2.dto.OpenRouterDtos.ModelsResponse;
+import com.example.madlen_demo2.model.AIModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the model registry in line with the upstream OpenRouter catalog.
+ * Models that disappeared upstream are marked unavailable, so they are rejected
+ * locally instead of failing after a round trip. A model disabled in config or by
+ * an admin stays disabled whatever the catalog says. When a refresh fails, the last
+ * good catalog (or the configured list) stays in place.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelCatalogSync {
+
+    private static final String SOURCE = "catalog";
+
+    private final WebClient openRouterWebClient;
+    private final OpenRouterProperties properties;
+    private final ModelRegistry modelRegistry;
+    private final MeterRegistry meterRegistry;
+
+    // Last successfully fetched upstream catalog, keyed by model id
+    private volatile Map<String, ModelInfo> catalog;
+    private volatile Instant fetchedAt;
+    // Model list the catalog is merged onto: the last one loaded from config or by an admin
+    private List<AIModel> configured;
+
+    private Counter refreshSuccess;
+    private Counter refreshFailure;
+
+    @PostConstruct
+    void registerMetrics() {
+        refreshSuccess = meterRegistry.counter("openrouter.catalog.refresh", "outcome", "success");
+        refreshFailure = meterRegistry.counter("openrouter.catalog.refresh", "outcome", "failure");
+        Gauge.builder("openrouter.catalog.age", this, sync -> sync.fetchedAt == null
+                        ? Double.NaN
+                        : Duration.between(sync.fetchedAt, Instant.now()).toMillis() / 1000.0)
+                .description("Seconds since the model catalog was last fetched successfully")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs in the background; refetches only once the cached catalog has outlived its TTL.
+     * A failed refresh is retried on the next tick while the stale catalog keeps being served.
+     */
+    @Scheduled(initialDelayString = "${openrouter.catalog.initial-delay:5s}",
+            fixedDelayString = "${openrouter.catalog.check-interval:1m}")
+    public void refreshIfStale() {
+        if (!properties.getCatalog().isEnabled()) {
+            return;
+        }
+        Instant lastFetch = fetchedAt;
+        if (lastFetch != null && lastFetch.plus(properties.getCatalog().getTtl()).isAfter(Instant.now())) {
+            return;
+        }
+        refresh();
+    }
+
+    /**
+     * Fetch the upstream catalog now and apply it to the registry
+     *
+     * @return true if the catalog was fetched and applied
+     */
+    public synchronized boolean refresh() {
+        try {
+            ModelsResponse response = openRouterWebClient.get()
+                    .uri("/models")
+                    .retrieve()
+                    .bodyToMono(ModelsResponse.class)
+                    .block(properties.getCatalog().getRequestTimeout());
+
+            // An empty catalog is far more likely an upstream glitch than every model being retired
+            if (response == null || response.getData() == null || response.getData().isEmpty()) {
+                throw new IllegalStateException("empty model catalog");
+            }
+
+            Map<String, ModelInfo> fetched = new LinkedHashMap<>();
+            for (ModelInfo info : response.getData()) {
+                if (info.getId() != null) {
+                    fetched.put(info.getId(), info);
+                }
+            }
+            catalog = fetched;
+            fetchedAt = Instant.now();
+            refreshSuccess.increment();
+
+            reapply();
+            return true;
+        } catch (Exception e) {
+            refreshFailure.increment();
+            log.warn("Model catalog refresh failed, keeping {}: {}",
+                    fetchedAt == null ? "configured models" : "catalog from " + fetchedAt, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Re-apply the cached catalog on top of the registry, e.g. after the model list was reloaded from config.
+     * Synchronized with {@link #refresh()} so two merges never race to replace the registry.
+     */
+    public synchronized void reapply() {
+        Map<String, ModelInfo> current = catalog;
+        if (current == null) {
+            return;
+        }
+
+        // Merge onto the configured list rather than the last merge, so a model that comes back upstream
+        // gets its configured availability back
+        ModelRegistry.Snapshot snapshot = modelRegistry.snapshot();
+        if (configured == null || !SOURCE.equals(snapshot.source())) {
+            configured = snapshot.all();
+        }
+
+        List<AIModel> merged = merge(configured, current);
+        long unavailable = merged.stream().filter(m -> !current.containsKey(m.getId())).count();
+        modelRegistry.replace(merged, SOURCE);
+        if (unavailable > 0) {
+            log.info("{} configured models are not offered upstream and were marked unavailable", unavailable);
+        }
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    private List<AIModel> merge(List<AIModel> models, Map<String, ModelInfo> upstream) {
+        List<AIModel> merged = new ArrayList<>(models.size());
+        for (AIModel model : models) {
+            ModelInfo info = upstream.get(model.getId());
+            merged.add(info == null
+                    ? model.toBuilder().available(false).build()
+                    : enrich(model.toBuilder(), info).available(model.isAvailable()).build());
+        }
+
+        if (properties.getCatalog().isDiscoverFreeModels()) {
+            Set<String> known = models.stream().map(AIModel::getId).collect(Collectors.toSet());
+            for (ModelInfo info : upstream.values()) {
+                if (!known.contains(info.getId()) && isFree(info)) {
+                    merged.add(enrich(AIModel.builder()
+                            .id(info.getId())
+                            .name(info.getName())
+                            .description(info.getDescription()), info).available(true).build());
+                }
+            }
+        }
+        return merged;
+    }
+
+    private AIModel.AIModelBuilder enrich(AIModel.AIModelBuilder builder, ModelInfo info) {
+        builder.contextLength(info.getContextLength());
+        if (info.getArchitecture() != null && info.getArchitecture().getInputModalities() != null) {
+            List<String> modalities = info.getArchitecture().getInputModalities();
+            builder.inputModalities(modalities).supportsVision(modalities.contains("image"));
+        }
+        if (info.getPricing() != null) {
+            builder.promptPrice(info.getPricing().getPrompt()).completionPrice(info.getPricing().getCompletion());
+        }
+        return builder;
+    }
+
+    private boolean isFree(ModelInfo info) {
+        if (info.getId().endsWith(":free")) {
+            return true;
+        }
+        return info.getPricing() != null
+                && isZero(info.getPricing().getPrompt())
+                && isZero(info.getPricing().getCompletion());
+    }
+
+    private boolean isZero(String price) {
+        try {
+            return price != null && Double.parseDouble(price) == 0.0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
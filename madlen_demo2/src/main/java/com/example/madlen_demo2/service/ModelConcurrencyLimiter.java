@@ -0,0 +1,239 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulkhead per model id: caps concurrent upstream calls, lets a bounded number of requests
+ * queue for a slot for at most the acquire timeout, and sheds anything beyond that right away.
+ * A slow model therefore only holds its own slots and queue, never the capacity of other models.
+ *
+ * Queued requests wait without holding a thread. Metrics per model: openrouter.model.in-flight,
+ * openrouter.model.queue.depth, openrouter.model.queue.wait and openrouter.model.rejected{reason}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelConcurrencyLimiter {
+
+    private final OpenRouterProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * Run a non-blocking upstream call holding a slot until it completes, fails or is cancelled
+     *
+     * @throws ChatExceptions.ModelOverloadedException if the model's queue is full
+     * @throws ChatExceptions.ModelBusyException       if no slot frees up within the acquire timeout
+     */
+    public <T> Mono<T> executeMono(String model, Mono<T> call) {
+        return Mono.usingWhen(acquire(model), permit -> call, permit -> Mono.fromRunnable(permit::release));
+    }
+
+    /**
+     * Run a streaming upstream call holding a slot until it completes, fails or is cancelled
+     */
+    public <T> Flux<T> executeStream(String model, Flux<T> call) {
+        return Flux.usingWhen(acquire(model), permit -> call, permit -> Mono.fromRunnable(permit::release));
+    }
+
+    private Mono<Permit> acquire(String model) {
+        return Mono.defer(() -> {
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(model, this::createBulkhead);
+            long start = System.nanoTime();
+            return bulkhead.acquire(properties.getConcurrency().getAcquireTimeout())
+                    .doOnNext(permit -> bulkhead.queueWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private void reject(String model, String reason) {
+        meterRegistry.counter("openrouter.model.rejected", "model", model, "reason", reason).increment();
+    }
+
+    private Bulkhead createBulkhead(String model) {
+        OpenRouterProperties.Concurrency config = properties.getConcurrency();
+        int limit = config.getModels().getOrDefault(model, config.getMaxPerModel());
+        int maxQueue = config.getQueues().getOrDefault(model, config.getMaxQueue());
+        Timer queueWait = Timer.builder("openrouter.model.queue.wait")
+                .description("Time spent waiting for a free upstream slot")
+                .tag("model", model)
+                .register(meterRegistry);
+        Bulkhead bulkhead = new Bulkhead(model, limit, maxQueue, queueWait);
+
+        Gauge.builder("openrouter.model.in-flight", bulkhead, Bulkhead::inFlight)
+                .description("Upstream calls currently running for a model")
+                .tag("model", model)
+                .register(meterRegistry);
+        Gauge.builder("openrouter.model.queue.depth", bulkhead, Bulkhead::queued)
+                .description("Requests waiting for a free upstream slot")
+                .tag("model", model)
+                .register(meterRegistry);
+        return bulkhead;
+    }
+
+    /**
+     * Held slot; releasing it more than once has no effect
+     */
+    static final class Permit {
+
+        private final Bulkhead bulkhead;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * Counting semaphore with a bounded FIFO queue whose waiters are Mono subscribers
+     */
+    final class Bulkhead {
+
+        private final String model;
+        private final int limit;
+        private final int maxQueue;
+        private final Timer queueWait;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private int inFlight;
+
+        Bulkhead(String model, int limit, int maxQueue, Timer queueWait) {
+            this.model = model;
+            this.limit = limit;
+            this.maxQueue = maxQueue;
+            this.queueWait = queueWait;
+        }
+
+        /**
+         * Wait for a slot for at most the timeout. The timeout claims the waiter the same way a grant
+         * does, so a slot is either delivered or never taken, never lost in between.
+         */
+        Mono<Permit> acquire(Duration timeout) {
+            return Mono.create(sink -> {
+                Waiter waiter = new Waiter(sink, new Permit(this));
+                boolean free;
+                boolean shed = false;
+                synchronized (this) {
+                    free = inFlight < limit;
+                    if (free) {
+                        inFlight++;
+                    } else if (waiters.size() >= maxQueue) {
+                        shed = true;
+                    } else {
+                        waiters.addLast(waiter);
+                    }
+                }
+                if (shed) {
+                    log.warn("Shedding request for model {}: {} in flight, {} queued", model, limit, maxQueue);
+                    reject(model, "queue-full");
+                    sink.error(new ChatExceptions.ModelOverloadedException(model));
+                    return;
+                }
+                // Cancelled before the slot was delivered: leave the queue or hand the slot on
+                sink.onCancel(() -> {
+                    if (waiter.cancel()) {
+                        leave(waiter);
+                    } else {
+                        waiter.permit.release();
+                    }
+                });
+                if (free) {
+                    waiter.grant();
+                    return;
+                }
+                Disposable timer = Schedulers.parallel().schedule(() -> {
+                    if (waiter.cancel()) {
+                        leave(waiter);
+                        log.warn("No free slot for model {} within {}", model, timeout);
+                        reject(model, "queue-timeout");
+                        sink.error(new ChatExceptions.ModelBusyException(model));
+                    }
+                }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+                sink.onDispose(timer);
+            });
+        }
+
+        private synchronized void leave(Waiter waiter) {
+            waiters.remove(waiter);
+        }
+
+        void release() {
+            while (true) {
+                Waiter next;
+                synchronized (this) {
+                    next = waiters.pollFirst();
+                    if (next == null) {
+                        inFlight--;
+                        return;
+                    }
+                }
+                // The slot passes straight to the next waiter; skip waiters that gave up while queued
+                if (next.grant()) {
+                    return;
+                }
+            }
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized int queued() {
+            return waiters.size();
+        }
+    }
+
+    private static final class Waiter {
+
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Permit> sink;
+        private final Permit permit;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Permit> sink, Permit permit) {
+            this.sink = sink;
+            this.permit = permit;
+        }
+
+        boolean grant() {
+            if (state.compareAndSet(WAITING, GRANTED)) {
+                sink.success(permit);
+                return true;
+            }
+            return false;
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+    }
+}
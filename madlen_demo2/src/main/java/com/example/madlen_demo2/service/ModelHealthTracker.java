@@ -0,0 +1,243 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling health of each model and a circuit breaker per model.
+ *
+ * Health is made of exponentially weighted moving averages of the completion latency, the time to
+ * first token of streams and the error rate. The score combines them into a value between 0 and 1:
+ * the success rate, scaled down as latency grows past the configured reference.
+ *
+ * The circuit opens after a run of consecutive failures, so calls to a dead model fail right away
+ * instead of waiting for a timeout. Once the open duration has passed a limited number of trial calls
+ * go through; a successful one closes the circuit again, a failed one reopens it.
+ * Metrics per model: openrouter.model.health.score, openrouter.model.circuit.state (0 closed,
+ * 1 half open, 2 open) and openrouter.model.circuit.transitions{state}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelHealthTracker {
+
+    // Score of a model without latency samples, the same as one answering at the reference latency
+    private static final double UNKNOWN_SCORE = 0.5;
+
+    public enum CircuitState { CLOSED, HALF_OPEN, OPEN }
+
+    /**
+     * Outcome of asking to call a model; trial calls have to be released when they end
+     */
+    public enum Admission { ALLOWED, PROBE, REJECTED }
+
+    public record Status(CircuitState state, double score, Long latencyMillis, Long firstTokenMillis,
+                         double errorRate, long calls, int consecutiveFailures, Instant openUntil) {
+    }
+
+    private final OpenRouterProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ModelHealth> models = new ConcurrentHashMap<>();
+
+    /**
+     * Ask to start a call to the model. Rejected while its circuit is open.
+     */
+    public Admission tryAcquire(String model) {
+        return healthOf(model).tryAcquire();
+    }
+
+    /**
+     * End of a call started with {@link #tryAcquire}, after its outcome (if any) was recorded
+     */
+    public void release(String model, Admission admission) {
+        if (admission == Admission.PROBE) {
+            healthOf(model).releaseProbe();
+        }
+    }
+
+    /**
+     * A call answered
+     *
+     * @param firstToken whether the latency is a stream's time to first token rather than a whole completion
+     */
+    public void recordSuccess(String model, long latencyNanos, boolean firstToken) {
+        healthOf(model).success(latencyNanos, firstToken);
+    }
+
+    /**
+     * A call failed because of the model or the upstream provider
+     */
+    public void recordFailure(String model) {
+        healthOf(model).failure();
+    }
+
+    /**
+     * Whether a call to the model would be let through now
+     */
+    public boolean isCallable(String model) {
+        ModelHealth health = models.get(model);
+        return health == null || health.isCallable();
+    }
+
+    public double score(String model) {
+        ModelHealth health = models.get(model);
+        return health == null ? UNKNOWN_SCORE : health.status().score();
+    }
+
+    /**
+     * The callable model with the best score; ties go to the earlier candidate
+     */
+    public Optional<String> healthiest(Collection<String> candidates) {
+        return candidates.stream()
+                .filter(this::isCallable)
+                .max(Comparator.comparingDouble(this::score));
+    }
+
+    /**
+     * Health of every model that has been called, by model id
+     */
+    public Map<String, Status> statuses() {
+        Map<String, Status> statuses = new TreeMap<>();
+        models.forEach((model, health) -> statuses.put(model, health.status()));
+        return statuses;
+    }
+
+    private ModelHealth healthOf(String model) {
+        return models.computeIfAbsent(model, this::createHealth);
+    }
+
+    private ModelHealth createHealth(String model) {
+        ModelHealth health = new ModelHealth(model);
+        Gauge.builder("openrouter.model.health.score", health, h -> h.status().score())
+                .description("Health score of a model between 0 and 1")
+                .tag("model", model)
+                .register(meterRegistry);
+        Gauge.builder("openrouter.model.circuit.state", health, h -> h.status().state().ordinal())
+                .description("Circuit state of a model: 0 closed, 1 half open, 2 open")
+                .tag("model", model)
+                .register(meterRegistry);
+        return health;
+    }
+
+    private final class ModelHealth {
+
+        private final String model;
+        private CircuitState state = CircuitState.CLOSED;
+        private Instant openedAt;
+        private int probesInFlight;
+        private int consecutiveFailures;
+        private long calls;
+        private double errorRate;
+        // Nanoseconds; negative until the first sample
+        private double latency = -1;
+        private double firstTokenLatency = -1;
+
+        ModelHealth(String model) {
+            this.model = model;
+        }
+
+        synchronized Admission tryAcquire() {
+            if (state == CircuitState.OPEN && openExpired()) {
+                transition(CircuitState.HALF_OPEN);
+            }
+            return switch (state) {
+                case CLOSED -> Admission.ALLOWED;
+                case OPEN -> Admission.REJECTED;
+                case HALF_OPEN -> {
+                    if (probesInFlight >= Math.max(1, properties.getRouting().getHalfOpenProbes())) {
+                        yield Admission.REJECTED;
+                    }
+                    probesInFlight++;
+                    yield Admission.PROBE;
+                }
+            };
+        }
+
+        synchronized void releaseProbe() {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+
+        synchronized void success(long nanos, boolean firstToken) {
+            double alpha = properties.getRouting().getEwmaAlpha();
+            calls++;
+            errorRate = (1 - alpha) * errorRate;
+            if (firstToken) {
+                firstTokenLatency = firstTokenLatency < 0 ? nanos : (1 - alpha) * firstTokenLatency + alpha * nanos;
+            } else {
+                latency = latency < 0 ? nanos : (1 - alpha) * latency + alpha * nanos;
+            }
+            consecutiveFailures = 0;
+            if (state != CircuitState.CLOSED) {
+                transition(CircuitState.CLOSED);
+            }
+        }
+
+        synchronized void failure() {
+            double alpha = properties.getRouting().getEwmaAlpha();
+            calls++;
+            errorRate = (1 - alpha) * errorRate + alpha;
+            consecutiveFailures++;
+            // A failed trial call reopens right away; a closed circuit opens after a run of failures
+            if (state == CircuitState.HALF_OPEN
+                    || (state == CircuitState.CLOSED && consecutiveFailures >= properties.getRouting().getFailureThreshold())) {
+                openedAt = Instant.now();
+                transition(CircuitState.OPEN);
+            }
+        }
+
+        synchronized boolean isCallable() {
+            return state != CircuitState.OPEN || openExpired();
+        }
+
+        synchronized Status status() {
+            return new Status(state, score(), millis(latency), millis(firstTokenLatency), errorRate, calls,
+                    consecutiveFailures, state == CircuitState.OPEN ? openedAt.plus(properties.getRouting().getOpenDuration()) : null);
+        }
+
+        private double score() {
+            if (state == CircuitState.OPEN) {
+                return 0;
+            }
+            // Streams are what users wait on, so time to first token counts when it is known
+            double observed = firstTokenLatency >= 0 ? firstTokenLatency : latency;
+            if (observed < 0) {
+                return (1 - errorRate) * UNKNOWN_SCORE;
+            }
+            double reference = Math.max(1, properties.getRouting().getLatencyReference().toNanos());
+            return (1 - errorRate) * reference / (reference + observed);
+        }
+
+        private boolean openExpired() {
+            return !Instant.now().isBefore(openedAt.plus(properties.getRouting().getOpenDuration()));
+        }
+
+        private void transition(CircuitState next) {
+            if (next == CircuitState.OPEN) {
+                log.warn("Circuit for model {} opened after {} consecutive failures", model, consecutiveFailures);
+            } else {
+                log.info("Circuit for model {} is now {}", model, next);
+            }
+            state = next;
+            probesInFlight = 0;
+            meterRegistry.counter("openrouter.model.circuit.transitions", "model", model, "state", next.name()).increment();
+        }
+
+        private static Long millis(double nanos) {
+            return nanos < 0 ? null : Duration.ofNanos((long) nanos).toMillis();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent upstream latencies per model, for percentiles such as the hedging delay.
+ * Keeps a fixed window of the latest samples, so the percentile follows the model's current behaviour.
+ */
+@Component
+@RequiredArgsConstructor
+public class ModelLatencyTracker {
+
+    private final OpenRouterProperties properties;
+
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+
+    public void record(String key, long nanos) {
+        samples.computeIfAbsent(key, k -> new Samples(Math.max(1, properties.getHedging().getWindow()))).add(nanos);
+    }
+
+    /**
+     * Latency below which the given share of recent samples fall, or empty while there are fewer than minSamples
+     */
+    public Optional<Duration> percentile(String key, double percentile, int minSamples) {
+        Samples recent = samples.get(key);
+        return recent == null ? Optional.empty() : recent.percentile(percentile, minSamples).map(Duration::ofNanos);
+    }
+
+    private static final class Samples {
+
+        private final long[] ring;
+        private int next;
+        private int count;
+
+        Samples(int window) {
+            this.ring = new long[window];
+        }
+
+        synchronized void add(long nanos) {
+            ring[next] = nanos;
+            next = (next + 1) % ring.length;
+            count = Math.min(count + 1, ring.length);
+        }
+
+        synchronized Optional<Long> percentile(double percentile, int minSamples) {
+            if (count == 0 || count < minSamples) {
+                return Optional.empty();
+            }
+            long[] sorted = Arrays.copyOf(ring, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return Optional.of(sorted[Math.clamp(index, 0, count - 1)]);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.AIModel;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory index of the models the app can route to.
+ * Readers always see one consistent, immutable snapshot; reloads build a new
+ * snapshot and swap it in atomically, so lookups never lock.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelRegistry {
+
+    private final OpenRouterProperties properties;
+    private final Environment environment;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+    private final AtomicLong versions = new AtomicLong();
+
+    public record Snapshot(long version, String source, Instant loadedAt,
+                           List<AIModel> all, Map<String, AIModel> byId,
+                           List<AIModel> vision, List<AIModel> text) {
+
+        static final Snapshot EMPTY = new Snapshot(0, "empty", Instant.EPOCH, List.of(), Map.of(), List.of(), List.of());
+    }
+
+    @PostConstruct
+    void init() {
+        replace(properties.getFreeModels(), "config");
+    }
+
+    /**
+     * Look up a model by id
+     */
+    public Optional<AIModel> find(String modelId) {
+        return modelId == null ? Optional.empty() : Optional.ofNullable(current.get().byId().get(modelId));
+    }
+
+    /**
+     * Check if a model is known and marked available
+     */
+    public boolean isAvailable(String modelId) {
+        return find(modelId).map(AIModel::isAvailable).orElse(false);
+    }
+
+    /**
+     * Check if a model supports vision/image inputs
+     */
+    public boolean supportsVision(String modelId) {
+        return find(modelId).map(AIModel::isSupportsVision).orElse(false);
+    }
+
+    public List<AIModel> all() {
+        return current.get().all();
+    }
+
+    public List<AIModel> visionModels() {
+        return current.get().vision();
+    }
+
+    public List<AIModel> textModels() {
+        return current.get().text();
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Replace the whole model list at once. The list is validated before
+     * anything is swapped, so a bad list leaves the current snapshot in place.
+     */
+    public Snapshot replace(List<AIModel> models, String source) {
+        Map<String, AIModel> byId = new LinkedHashMap<>();
+        for (AIModel model : models == null ? List.<AIModel>of() : models) {
+            if (model == null || !StringUtils.hasText(model.getId())) {
+                throw new ChatExceptions.InvalidModelCatalogException("every model needs an id");
+            }
+            // Copy so later changes to the source list can't leak into the snapshot
+            AIModel copy = model.toBuilder()
+                    .id(model.getId().trim())
+                    .name(StringUtils.hasText(model.getName()) ? model.getName() : model.getId().trim())
+                    .inputModalities(model.getInputModalities() == null ? null : List.copyOf(model.getInputModalities()))
+                    .build();
+            if (byId.putIfAbsent(copy.getId(), copy) != null) {
+                throw new ChatExceptions.InvalidModelCatalogException("duplicate model id " + copy.getId());
+            }
+        }
+
+        List<AIModel> all = List.copyOf(byId.values());
+        List<AIModel> vision = new ArrayList<>();
+        List<AIModel> text = new ArrayList<>();
+        for (AIModel model : all) {
+            (model.isSupportsVision() ? vision : text).add(model);
+        }
+
+        Snapshot snapshot = new Snapshot(versions.incrementAndGet(), source, Instant.now(),
+                all, Map.copyOf(byId), List.copyOf(vision), List.copyOf(text));
+        current.set(snapshot);
+
+        log.info("Model registry v{} loaded from {}: {} models ({} vision, {} text)",
+                snapshot.version(), source, all.size(), vision.size(), text.size());
+        return snapshot;
+    }
+
+    /**
+     * Reload the model list from configuration: the JSON file at openrouter.models-file
+     * when one is configured, otherwise openrouter.free-models rebound from the environment.
+     */
+    public Snapshot reloadFromConfig() {
+        String modelsFile = properties.getModelsFile();
+        if (StringUtils.hasText(modelsFile)) {
+            return replace(readModelsFile(modelsFile), modelsFile);
+        }
+
+        List<AIModel> models = Binder.get(environment)
+                .bind("openrouter.free-models", Bindable.listOf(AIModel.class))
+                .orElse(List.of());
+        return replace(models, "config");
+    }
+
+    private List<AIModel> readModelsFile(String location) {
+        Resource resource = resourceLoader.getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            return objectMapper.readValue(in, new TypeReference<List<AIModel>>() {});
+        } catch (IOException e) {
+            throw new ChatExceptions.InvalidModelCatalogException("could not read " + location + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.model.RateLimitBucket;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps buckets in MongoDB so all instances share the same limits.
+ * A bucket is updated only if nobody changed it since it was read; contended updates are retried.
+ * When MongoDB is unavailable requests are let through rather than failing the chat.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "chat.rate-limit.store", havingValue = "mongo")
+public class MongoRateLimitStore implements RateLimitStore {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final MongoTemplate mongoTemplate;
+
+    // Usage recorded after a reply must not block the stream's thread
+    private final ExecutorService consumeExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rate-limit-", 0).factory());
+
+    @Override
+    public Duration tryAcquire(String key, Bucket bucket, long permits) {
+        return update(key, bucket, permits, false);
+    }
+
+    @Override
+    public void consume(String key, Bucket bucket, long permits) {
+        consumeExecutor.execute(() -> update(key, bucket, permits, true));
+    }
+
+    private Duration update(String key, Bucket bucket, long permits, boolean force) {
+        try {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                long now = System.currentTimeMillis();
+                RateLimitBucket current = mongoTemplate.findById(key, RateLimitBucket.class);
+                double available = current == null
+                        ? bucket.capacity()
+                        : bucket.refill(current.getTokens(), Duration.ofMillis(now - current.getRefilledAt()).toNanos());
+                if (!force && available < permits) {
+                    return bucket.timeUntil(available, permits);
+                }
+                double remaining = Math.min(bucket.capacity(), available - permits);
+                if (current == null ? insert(key, remaining, now) : replace(current, remaining, now)) {
+                    return Duration.ZERO;
+                }
+            }
+            log.debug("Rate limit bucket {} is contended, letting the request through", key);
+        } catch (DataAccessException e) {
+            log.warn("Rate limit store unavailable, letting the request through: {}", e.getMessage());
+        }
+        return Duration.ZERO;
+    }
+
+    private boolean insert(String key, double tokens, long now) {
+        try {
+            mongoTemplate.insert(RateLimitBucket.builder()
+                    .id(key)
+                    .tokens(tokens)
+                    .refilledAt(now)
+                    .updatedAt(Instant.now())
+                    .build());
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Created concurrently by another request
+            return false;
+        }
+    }
+
+    private boolean replace(RateLimitBucket current, double tokens, long now) {
+        Query unchanged = Query.query(Criteria.where("_id").is(current.getId())
+                .and("refilledAt").is(current.getRefilledAt())
+                .and("tokens").is(current.getTokens()));
+        Update update = new Update()
+                .set("tokens", tokens)
+                .set("refilledAt", now)
+                .set("updatedAt", Instant.now());
+        return mongoTemplate.updateFirst(unchanged, update, RateLimitBucket.class).getMatchedCount() > 0;
+    }
+}
@@ -9,54 +9,108 @@ import com.example.madlen_demo2.model.ImageContent;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OpenRouterService {
 
+    // Model id that routes each request to the healthiest model that can handle it
+    public static final String AUTO_MODEL = "auto";
+
+    private static final String SUMMARY_PROMPT = "You maintain a running summary of a chat between a user and an assistant. "
+            + "Write a concise summary of the conversation below that keeps facts, decisions, names, numbers "
+            + "and open questions the assistant may need later. Reply with the summary only.";
+
     private final WebClient openRouterWebClient;
     private final OpenRouterProperties properties;
-
-    // Maximum image size in bytes (5 MB)
-    private static final long MAX_IMAGE_SIZE = 5 * 1024 * 1024;
+    private final ImageService imageService;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final ModelRegistry modelRegistry;
+    private final CompletionCache completionCache;
+    private final ContextWindowManager contextWindowManager;
+    private final MessageFragmentCache messageFragmentCache;
+    private final UpstreamResilience upstreamResilience;
+    private final ModelHealthTracker healthTracker;
 
     /**
      * Get list of available free models
      */
     @Observed(name = "openrouter.get-models")
     public List<AIModel> getAvailableModels() {
-        return properties.getFreeModels();
+        return modelRegistry.all();
+    }
+
+    /**
+     * Get only vision-capable models
+     */
+    public List<AIModel> getVisionModels() {
+        return modelRegistry.visionModels();
     }
 
     /**
-     * Check if a model is valid and available
+     * Check if a model is valid and available; "auto" is valid while any model can be routed to
      */
     public boolean isValidModel(String modelId) {
-        return properties.getFreeModels().stream()
-                .anyMatch(m -> m.getId().equals(modelId));
+        if (AUTO_MODEL.equals(modelId)) {
+            return !autoCandidates(false).isEmpty();
+        }
+        return modelRegistry.isAvailable(modelId);
     }
 
     /**
-     * Check if a model supports vision/image inputs
+     * Check if a model supports vision/image inputs; for "auto" whether any vision model can be routed to
      */
     public boolean supportsVision(String modelId) {
-        return properties.getFreeModels().stream()
-                .filter(m -> m.getId().equals(modelId))
-                .findFirst()
-                .map(AIModel::isSupportsVision)
-                .orElse(false);
+        if (AUTO_MODEL.equals(modelId)) {
+            return !autoCandidates(true).isEmpty();
+        }
+        return modelRegistry.supportsVision(modelId);
+    }
+
+    /**
+     * The model to call for a request. "auto" becomes the healthiest available model that fits the
+     * request; any other model is returned as is.
+     *
+     * @throws ChatExceptions.ModelUnavailableException if every candidate for "auto" has an open circuit
+     */
+    public String resolveModel(String modelId, boolean needsVision) {
+        if (!AUTO_MODEL.equals(modelId)) {
+            return modelId;
+        }
+        String model = healthTracker.healthiest(autoCandidates(needsVision))
+                .orElseThrow(() -> new ChatExceptions.ModelUnavailableException(AUTO_MODEL));
+        log.debug("Routing auto request (vision: {}) to model: {} (score {})", needsVision, model, healthTracker.score(model));
+        return model;
+    }
+
+    private List<String> autoCandidates(boolean needsVision) {
+        List<String> configured = properties.getRouting().getAutoModels();
+        List<String> candidates = configured.isEmpty()
+                ? modelRegistry.all().stream().map(AIModel::getId).toList()
+                : configured;
+        return candidates.stream()
+                .filter(modelRegistry::isAvailable)
+                .filter(model -> !needsVision || modelRegistry.supportsVision(model))
+                .toList();
     }
 
     /**
@@ -64,15 +118,15 @@ public class OpenRouterService {
      * Supports both text-only and multi-modal (with images) messages
      */
     @Observed(name = "openrouter.chat-completion")
-    public ChatMessage sendChatRequest(String model, List<ChatMessage> history, String userMessage) {
-        return sendChatRequest(model, history, userMessage, null);
+    public ChatMessage sendChatRequest(String sessionId, String model, List<ChatMessage> history, String userMessage) {
+        return sendChatRequest(sessionId, model, history, userMessage, null);
     }
 
     /**
      * Send a chat completion request with optional images (non-streaming)
      */
     @Observed(name = "openrouter.chat-completion-multimodal")
-    public ChatMessage sendChatRequest(String model, List<ChatMessage> history,
+    public ChatMessage sendChatRequest(String sessionId, String model, List<ChatMessage> history,
                                        String userMessage, List<ImageContent> images) {
         validateApiKey();
 
@@ -85,55 +139,118 @@ public class OpenRouterService {
 
         // Validate images
         if (hasImages) {
-            validateImages(images);
+            imageService.validateImages(images);
         }
 
         log.info("Sending chat request to model: {}, with images: {}", model, hasImages);
 
-        // Build messages list
-        List<Message> messages = buildMessageList(history, userMessage, images);
+        // Build the request body from cached history fragments plus the new turn
+        CompletionRequestBody request = buildRequestBody(sessionId, model, history, userMessage, images);
+
+        String cacheKey = completionCache.isEnabled() ? completionCache.keyFor(request) : null;
+        if (cacheKey != null) {
+            Optional<String> cached = completionCache.get(cacheKey);
+            if (cached.isPresent()) {
+                log.info("Serving cached completion for model: {}", model);
+                return ChatMessage.builder()
+                        .role("assistant")
+                        .content(cached.get())
+                        .build();
+            }
+        }
 
-        ChatCompletionRequest request = ChatCompletionRequest.builder()
-                .model(model)
-                .messages(messages)
-                .stream(false)
-                .maxTokens(2048)
-                .temperature(0.7)
+        Completion completion = complete(model, request, hasImages,
+                fallback -> buildRequestBody(sessionId, fallback, history, userMessage, images));
+        ChatCompletionResponse response = completion.response();
+        Object contentObj = response.getChoices().get(0).getMessage().getContent();
+        String assistantContent = contentObj != null ? contentObj.toString() : "";
+
+        log.info("Received response from model: {}, tokens used: {}",
+                completion.model(), response.getUsage() != null ? response.getUsage().getTotalTokens() : "unknown");
+
+        // A fallback's answer is not cached under the requested model's key
+        if (cacheKey != null && completion.model().equals(model)) {
+            completionCache.put(cacheKey, assistantContent, response.getChoices().get(0).getFinishReason());
+        }
+
+        return ChatMessage.builder()
+                .role("assistant")
+                .content(assistantContent)
+                .model(completion.model())
                 .build();
+    }
 
-        try {
-            ChatCompletionResponse response = openRouterWebClient.post()
-                    .uri("/chat/completions")
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + properties.getApi().getKey())
-                    .header("HTTP-Referer", "http://localhost:8080")
-                    .header("X-Title", "Madlen Chat")
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(ChatCompletionResponse.class)
-                    .timeout(Duration.ofSeconds(90)) // Longer timeout for vision requests
-                    .block();
-
-            if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
-                throw new ChatExceptions.OpenRouterException("Empty response from AI model");
+    /**
+     * Condense a run of conversation messages into a short summary (non-streaming).
+     * The previous summary, if any, is folded into the new one.
+     */
+    @Observed(name = "openrouter.summarize")
+    public String summarize(String model, String previousSummary, List<ChatMessage> messages, int maxTokens) {
+        validateApiKey();
+
+        StringBuilder transcript = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            transcript.append("Summary so far:\n").append(previousSummary).append("\n\nNew messages:\n");
+        }
+        for (ChatMessage m : messages) {
+            transcript.append("user".equals(m.getRole()) ? "User: " : "Assistant: ")
+                    .append(m.getContent() == null ? "" : m.getContent());
+            if (m.hasImages()) {
+                transcript.append(" [").append(m.getImages().size()).append(" image(s) attached]");
             }
+            transcript.append("\n");
+        }
 
-            Object contentObj = response.getChoices().get(0).getMessage().getContent();
-            String assistantContent = contentObj != null ? contentObj.toString() : "";
+        List<byte[]> prompt = List.of(
+                messageFragmentCache.encode(Message.builder().role("system").content(SUMMARY_PROMPT).build()),
+                messageFragmentCache.encode(Message.builder().role("user").content(transcript.toString()).build()));
+        CompletionRequestBody request = new CompletionRequestBody(model, prompt, maxTokens, 0.2);
 
-            log.info("Received response from model: {}, tokens used: {}",
-                    model, response.getUsage() != null ? response.getUsage().getTotalTokens() : "unknown");
+        ChatCompletionResponse response = complete(model, request, false,
+                fallback -> new CompletionRequestBody(fallback, prompt, maxTokens, 0.2)).response();
+        Object content = response.getChoices().get(0).getMessage().getContent();
+        return content != null ? content.toString().trim() : "";
+    }
 
-            return ChatMessage.builder()
-                    .role("assistant")
-                    .content(assistantContent)
-                    .build();
+    /**
+     * Blocking call to /chat/completions within the model's bulkhead, with retries, hedging and fallbacks
+     *
+     * @param fallbackBodies builds the request for a fallback model
+     */
+    private Completion complete(String model, CompletionRequestBody request, boolean needsVision,
+                                Function<String, CompletionRequestBody> fallbackBodies) {
+        try {
+            Completion completion = upstreamResilience.call(model, needsVision, false, m ->
+                            requestFor(m, model, request, fallbackBodies)
+                                    .flatMap(body -> concurrencyLimiter.executeMono(m, openRouterWebClient.post()
+                                            .uri("/chat/completions")
+                                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + properties.getApi().getKey())
+                                            .header("HTTP-Referer", "http://localhost:8080")
+                                            .header("X-Title", "Madlen Chat")
+                                            .contentLength(body.contentLength(false))
+                                            .body(BodyInserters.fromDataBuffers(body.encode(false)))
+                                            .retrieve()
+                                            .bodyToMono(ChatCompletionResponse.class)
+                                            .timeout(Duration.ofSeconds(90)))) // Longer timeout for vision requests
+                                    .map(response -> new Completion(m, response))
+                                    .flux())
+                    .blockFirst();
+
+            if (completion == null || completion.response().getChoices() == null
+                    || completion.response().getChoices().isEmpty()) {
+                throw new ChatExceptions.OpenRouterException("Empty response from AI model");
+            }
+            return completion;
 
         } catch (WebClientResponseException e) {
             log.error("OpenRouter API error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
             throw new ChatExceptions.OpenRouterException("AI service returned error: " + e.getMessage());
         } catch (Exception e) {
             if (e instanceof ChatExceptions.OpenRouterException ||
-                    e instanceof ChatExceptions.VisionNotSupportedException) {
+                    e instanceof ChatExceptions.VisionNotSupportedException ||
+                    e instanceof ChatExceptions.ModelBusyException ||
+                    e instanceof ChatExceptions.ModelOverloadedException ||
+                    e instanceof ChatExceptions.ModelUnavailableException) {
                 throw e;
             }
             log.error("Failed to communicate with OpenRouter", e);
@@ -141,21 +258,48 @@ public class OpenRouterService {
         }
     }
 
+    /**
+     * Request body for one attempt. Fallback bodies are built off the calling thread, since
+     * trimming and image preprocessing differ per model and may load stored images.
+     */
+    private static Mono<CompletionRequestBody> requestFor(String attemptModel, String model, CompletionRequestBody request,
+                                                          Function<String, CompletionRequestBody> fallbackBodies) {
+        if (attemptModel.equals(model)) {
+            return Mono.just(request);
+        }
+        return Mono.fromCallable(() -> fallbackBodies.apply(attemptModel)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private record Completion(String model, ChatCompletionResponse response) {
+    }
+
     /**
      * Send a streaming chat completion request
      * Returns a Flux that emits content chunks as they arrive
      */
     @Observed(name = "openrouter.chat-completion-stream")
-    public Flux<String> sendChatRequestStream(String model, List<ChatMessage> history, String userMessage) {
-        return sendChatRequestStream(model, history, userMessage, null);
+    public Flux<String> sendChatRequestStream(String sessionId, String model, List<ChatMessage> history, String userMessage) {
+        return sendChatRequestStream(sessionId, model, history, userMessage, null);
     }
 
     /**
      * Send a streaming chat completion request with optional images
      */
-    @Observed(name = "openrouter.chat-completion-stream-multimodal")
-    public Flux<String> sendChatRequestStream(String model, List<ChatMessage> history,
+    public Flux<String> sendChatRequestStream(String sessionId, String model, List<ChatMessage> history,
                                               String userMessage, List<ImageContent> images) {
+        return sendChatRequestStream(sessionId, model, history, userMessage, images, answeredBy -> { });
+    }
+
+    /**
+     * Send a streaming chat completion request with optional images
+     *
+     * @param onAnswer called with the model that produced the first chunk, which is a fallback's
+     *                 when the requested model failed; not called for replies served from the cache
+     */
+    @Observed(name = "openrouter.chat-completion-stream-multimodal")
+    public Flux<String> sendChatRequestStream(String sessionId, String model, List<ChatMessage> history,
+                                              String userMessage, List<ImageContent> images,
+                                              Consumer<String> onAnswer) {
         validateApiKey();
 
         boolean hasImages = images != null && !images.isEmpty();
@@ -168,7 +312,7 @@ public class OpenRouterService {
         // Validate images
         if (hasImages) {
             try {
-                validateImages(images);
+                imageService.validateImages(images);
             } catch (Exception e) {
                 return Flux.error(e);
             }
@@ -176,74 +320,139 @@ public class OpenRouterService {
 
         log.info("Sending streaming chat request to model: {}, with images: {}", model, hasImages);
 
-        List<Message> messages = buildMessageList(history, userMessage, images);
+        CompletionRequestBody request = buildRequestBody(sessionId, model, history, userMessage, images);
 
-        ChatCompletionRequest request = ChatCompletionRequest.builder()
-                .model(model)
-                .messages(messages)
-                .stream(true)
-                .maxTokens(2048)
-                .temperature(0.7)
-                .build();
+        String cacheKey = completionCache.isEnabled() ? completionCache.keyFor(request) : null;
+        if (cacheKey != null) {
+            Optional<String> cached = completionCache.get(cacheKey);
+            if (cached.isPresent()) {
+                log.info("Replaying cached completion for model: {}", model);
+                return completionCache.replay(cached.get());
+            }
+        }
 
-        return openRouterWebClient.post()
+        // Collected only when the cache is on, so a finished stream can be stored
+        StringBuilder streamed = cacheKey != null ? new StringBuilder() : null;
+        AtomicReference<String> finishReason = new AtomicReference<>();
+        AtomicReference<String> answeredBy = new AtomicReference<>();
+
+        // Retries, hedging and fallbacks only apply until the first token
+        Flux<String> stream = upstreamResilience.call(model, hasImages, true, m ->
+                        requestFor(m, model, request, fallback -> buildRequestBody(sessionId, fallback, history, userMessage, images))
+                                .flatMapMany(body -> streamCompletion(m, body, finishReason))
+                                .doOnNext(chunk -> {
+                                    if (answeredBy.compareAndSet(null, m)) {
+                                        onAnswer.accept(m);
+                                    }
+                                }))
+                .onErrorMap(e -> !(e instanceof ChatExceptions.OpenRouterException
+                        || e instanceof ChatExceptions.ModelBusyException
+                        || e instanceof ChatExceptions.ModelOverloadedException
+                        || e instanceof ChatExceptions.ModelUnavailableException), e -> {
+                    log.error("Streaming error: {}", e.getMessage());
+                    return new ChatExceptions.OpenRouterException("Streaming failed: " + e.getMessage());
+                })
+                .doOnComplete(() -> {
+                    if (answeredBy.get() != null && !model.equals(answeredBy.get())) {
+                        log.info("Streamed reply for model: {} came from fallback: {}", model, answeredBy.get());
+                    }
+                });
+
+        if (streamed == null) {
+            return stream;
+        }
+        // Only a stream that ran to completion on the requested model is cached; errors and cancellations skip doOnComplete
+        return stream
+                .doOnNext(streamed::append)
+                .doOnComplete(() -> {
+                    if (model.equals(answeredBy.get())) {
+                        completionCache.put(cacheKey, streamed.toString(), finishReason.get());
+                    }
+                });
+    }
+
+    /**
+     * One streaming call to /chat/completions, holding one of the model's slots for as long as it runs.
+     * Errors are left as they are so retries and fallbacks can tell them apart.
+     */
+    private Flux<String> streamCompletion(String model, CompletionRequestBody request, AtomicReference<String> finishReason) {
+        return concurrencyLimiter.executeStream(model, openRouterWebClient.post()
                 .uri("/chat/completions")
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + properties.getApi().getKey())
                 .header("HTTP-Referer", "http://localhost:8080")
                 .header("X-Title", "Madlen Chat")
                 .accept(MediaType.TEXT_EVENT_STREAM)
-                .bodyValue(request)
+                .contentLength(request.contentLength(true))
+                .body(BodyInserters.fromDataBuffers(request.encode(true)))
                 .retrieve()
-                .bodyToFlux(String.class)
+                .bodyToFlux(DataBuffer.class)
+                .transform(OpenRouterStreamDecoder::decode)
                 .timeout(Duration.ofSeconds(180)) // Longer timeout for vision streaming
-                .filter(line -> line != null && !line.isBlank() && !line.equals("[DONE]"))
-                .map(this::extractContentFromStreamChunk)
-                .filter(content -> content != null && !content.isEmpty())
-                .onErrorMap(e -> {
-                    log.error("Streaming error: {}", e.getMessage());
-                    return new ChatExceptions.OpenRouterException("Streaming failed: " + e.getMessage());
-                });
+                .<String>handle((event, sink) -> {
+                    if (event.getErrorMessage() != null) {
+                        sink.error(new ChatExceptions.OpenRouterException(event.getErrorMessage()));
+                        return;
+                    }
+                    if (event.getUsage() != null) {
+                        log.info("Streaming response from model: {}, tokens used: {}",
+                                model, event.getUsage().getTotalTokens());
+                    }
+                    if (event.getFinishReason() != null) {
+                        finishReason.set(event.getFinishReason());
+                    }
+                    if (event.getContent() != null && !event.getContent().isEmpty()) {
+                        sink.next(event.getContent());
+                    }
+                })
+                // Cancelling the body closes the upstream connection, so OpenRouter stops generating
+                .doOnCancel(() -> log.info("Streaming request to model: {} cancelled", model)));
     }
 
     /**
-     * Build message list for OpenRouter API
-     * Handles both text-only and multi-modal messages
+     * Build the request body for OpenRouter API.
+     * History messages come from the fragment cache; only the new user turn is encoded here.
      */
-    private List<Message> buildMessageList(List<ChatMessage> history, String userMessage,
-                                           List<ImageContent> images) {
-        List<Message> messages = new ArrayList<>();
-
-        // Add history messages
-        for (ChatMessage m : history) {
-            if (m.isMultiModal()) {
-                // Build multi-modal content for historical messages with images
-                messages.add(buildMultiModalMessage(m.getRole(), m.getContent(), m.getImages()));
-            } else {
-                // Simple text message
-                messages.add(Message.builder()
-                        .role(m.getRole())
-                        .content(m.getContent())
-                        .build());
-            }
+    private CompletionRequestBody buildRequestBody(String sessionId, String model, List<ChatMessage> history,
+                                                   String userMessage, List<ImageContent> images) {
+        List<byte[]> messages = new ArrayList<>();
+
+        // Add history messages that fit the model's token budget
+        for (ChatMessage m : contextWindowManager.fit(model, history, userMessage, images)) {
+            messages.add(messageFragmentCache.fragmentFor(sessionId, model, m, message -> toMessage(model, message)));
         }
 
         // Add the new user message
         if (images != null && !images.isEmpty()) {
-            messages.add(buildMultiModalMessage("user", userMessage, images));
+            messages.add(messageFragmentCache.encode(buildMultiModalMessage(model, "user", userMessage, images)));
         } else {
-            messages.add(Message.builder()
+            messages.add(messageFragmentCache.encode(Message.builder()
                     .role("user")
                     .content(userMessage)
-                    .build());
+                    .build()));
         }
 
-        return messages;
+        return new CompletionRequestBody(model, messages, 2048, 0.7);
+    }
+
+    /**
+     * Handles both text-only and multi-modal history messages
+     */
+    private Message toMessage(String model, ChatMessage m) {
+        if (m.isMultiModal()) {
+            // Build multi-modal content for historical messages with images
+            return buildMultiModalMessage(model, m.getRole(), m.getContent(), m.getImages());
+        }
+        // Simple text message
+        return Message.builder()
+                .role(m.getRole())
+                .content(m.getContent())
+                .build();
     }
 
     /**
      * Build a multi-modal message with text and images
      */
-    private Message buildMultiModalMessage(String role, String text, List<ImageContent> images) {
+    private Message buildMultiModalMessage(String model, String role, String text, List<ImageContent> images) {
         List<ContentPart> contentParts = new ArrayList<>();
 
         // Add text part first
@@ -254,22 +463,14 @@ public class OpenRouterService {
                     .build());
         }
 
-        // Add image parts
+        // Add image parts, loading and downscaling stored images only now
+        String detail = imageService.detailFor(model);
         for (ImageContent image : images) {
-            String imageUrl;
-            if ("base64".equals(image.getType())) {
-                // Convert to data URI format
-                imageUrl = "data:" + image.getMediaType() + ";base64," + image.getData();
-            } else {
-                // Use URL directly
-                imageUrl = image.getData();
-            }
-
             contentParts.add(ContentPart.builder()
                     .type("image_url")
                     .imageUrl(ImageUrl.builder()
-                            .url(imageUrl)
-                            .detail("auto")
+                            .url(imageService.toImageUrl(image, model))
+                            .detail(detail)
                             .build())
                     .build());
         }
@@ -280,76 +481,6 @@ public class OpenRouterService {
                 .build();
     }
 
-    /**
-     * Validate images before sending to API
-     */
-    private void validateImages(List<ImageContent> images) {
-        for (ImageContent image : images) {
-            if (!image.isValid()) {
-                throw new ChatExceptions.InvalidImageException("Invalid image format or missing data");
-            }
-
-            // Check base64 size (rough estimate)
-            if ("base64".equals(image.getType())) {
-                long estimatedSize = (long) (image.getData().length() * 0.75);
-                if (estimatedSize > MAX_IMAGE_SIZE) {
-                    throw new ChatExceptions.ImageTooLargeException(MAX_IMAGE_SIZE);
-                }
-            }
-        }
-    }
-
-    private String extractContentFromStreamChunk(String chunk) {
-        try {
-            // SSE format: data: {"choices":[{"delta":{"content":"..."}}]}
-            if (chunk.startsWith("data: ")) {
-                chunk = chunk.substring(6);
-            }
-
-            if (chunk.equals("[DONE]") || chunk.isBlank()) {
-                return "";
-            }
-
-            // Simple JSON parsing for delta content
-            // Looking for "content":"..." in the delta object
-            int deltaIndex = chunk.indexOf("\"delta\"");
-            if (deltaIndex == -1) return "";
-
-            int contentIndex = chunk.indexOf("\"content\"", deltaIndex);
-            if (contentIndex == -1) return "";
-
-            int colonIndex = chunk.indexOf(":", contentIndex);
-            if (colonIndex == -1) return "";
-
-            int startQuote = chunk.indexOf("\"", colonIndex + 1);
-            if (startQuote == -1) return "";
-
-            int endQuote = findClosingQuote(chunk, startQuote + 1);
-            if (endQuote == -1) return "";
-
-            String content = chunk.substring(startQuote + 1, endQuote);
-            // Unescape common sequences
-            return content
-                    .replace("\\n", "\n")
-                    .replace("\\t", "\t")
-                    .replace("\\\"", "\"")
-                    .replace("\\\\", "\\");
-
-        } catch (Exception e) {
-            log.trace("Failed to parse stream chunk: {}", chunk);
-            return "";
-        }
-    }
-
-    private int findClosingQuote(String s, int start) {
-        for (int i = start; i < s.length(); i++) {
-            if (s.charAt(i) == '"' && (i == 0 || s.charAt(i - 1) != '\\')) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     private void validateApiKey() {
         if (properties.getApi().getKey() == null || properties.getApi().getKey().isBlank()) {
             throw new ChatExceptions.ApiKeyNotConfiguredException();
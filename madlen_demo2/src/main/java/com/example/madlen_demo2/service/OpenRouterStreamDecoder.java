@@ -0,0 +1,238 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.dto.OpenRouterDtos.StreamEvent;
+import com.example.madlen_demo2.dto.OpenRouterDtos.Usage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the OpenRouter server-sent event stream straight from network buffers.
+ * <p>
+ * Lines are split at the byte level, so multi-byte UTF-8 characters split across
+ * frames are reassembled before decoding. Each "data:" payload is fed to a single
+ * non-blocking Jackson parser per stream, which pulls only delta.content,
+ * finish_reason, usage and error.message and handles all JSON escapes.
+ */
+@Slf4j
+public class OpenRouterStreamDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] DATA_PREFIX = "data:".getBytes();
+    private static final byte[] DONE = "[DONE]".getBytes();
+
+    private JsonParser parser;
+    private byte[] chunk = new byte[8192];
+    private byte[] pending = new byte[1024];
+    private int pendingLength;
+
+    private String content;
+    private String finishReason;
+    private Usage usage;
+    private String errorMessage;
+
+    /**
+     * Decode a raw SSE body into stream events, releasing each buffer once read
+     */
+    public static Flux<StreamEvent> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            OpenRouterStreamDecoder decoder = new OpenRouterStreamDecoder();
+            return body.concatMapIterable(buffer -> {
+                try {
+                    return decoder.feed(buffer);
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            }).concatWith(Flux.defer(() -> Flux.fromIterable(decoder.finish())));
+        });
+    }
+
+    /**
+     * Consume one network buffer and return the events completed by it
+     */
+    List<StreamEvent> feed(DataBuffer buffer) {
+        int length = buffer.readableByteCount();
+        if (chunk.length < length) {
+            chunk = new byte[Math.max(length, chunk.length * 2)];
+        }
+        buffer.read(chunk, 0, length);
+
+        List<StreamEvent> events = new ArrayList<>(1);
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (chunk[i] != '\n') {
+                continue;
+            }
+            if (pendingLength > 0) {
+                // The line started in an earlier buffer
+                append(chunk, lineStart, i);
+                processLine(pending, 0, pendingLength, events);
+                pendingLength = 0;
+            } else {
+                processLine(chunk, lineStart, i, events);
+            }
+            lineStart = i + 1;
+        }
+        if (lineStart < length) {
+            append(chunk, lineStart, length);
+        }
+        return events;
+    }
+
+    /**
+     * Flush a final line that was not terminated by a newline
+     */
+    List<StreamEvent> finish() {
+        List<StreamEvent> events = new ArrayList<>(1);
+        if (pendingLength > 0) {
+            processLine(pending, 0, pendingLength, events);
+            pendingLength = 0;
+        }
+        return events;
+    }
+
+    private void processLine(byte[] bytes, int start, int end, List<StreamEvent> events) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        if (start == end) {
+            endOfEvent();
+            return;
+        }
+        // Comments (":"), "event:" and "id:" lines carry no content
+        if (!startsWith(bytes, start, end, DATA_PREFIX)) {
+            return;
+        }
+
+        int payloadStart = start + DATA_PREFIX.length;
+        if (payloadStart < end && bytes[payloadStart] == ' ') {
+            payloadStart++;
+        }
+        if (Arrays.equals(bytes, payloadStart, end, DONE, 0, DONE.length) || payloadStart == end) {
+            return;
+        }
+
+        try {
+            parse(bytes, payloadStart, end, events);
+        } catch (IOException e) {
+            log.trace("Failed to parse stream chunk: {}", new String(bytes, payloadStart, end - payloadStart));
+            parser = null;
+            resetEvent();
+        }
+    }
+
+    private void parse(byte[] bytes, int start, int end, List<StreamEvent> events) throws IOException {
+        if (parser == null) {
+            parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        }
+        ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, start, end);
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            JsonStreamContext ctx = parser.getParsingContext();
+            switch (token) {
+                case VALUE_STRING -> onString(ctx);
+                case VALUE_NUMBER_INT -> onInt(ctx);
+                case END_OBJECT -> {
+                    if (ctx.inRoot()) {
+                        emit(events);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * A blank line ends an SSE event. JSON may span several data lines of one event,
+     * but a value still open at the end of the event is truncated and discarded.
+     */
+    private void endOfEvent() {
+        if (parser != null && !parser.getParsingContext().inRoot()) {
+            log.trace("Discarding truncated stream event");
+            parser = null;
+            resetEvent();
+        }
+    }
+
+    private void onString(JsonStreamContext ctx) throws IOException {
+        // choices[i].delta.content
+        if (named(ctx, "content") && named(ctx.getParent(), "delta") && isChoice(ctx.getParent())) {
+            content = content == null ? parser.getText() : content + parser.getText();
+        } else if (named(ctx, "finish_reason") && isChoice(ctx)) {
+            finishReason = parser.getText();
+        } else if (named(ctx, "message") && named(ctx.getParent(), "error") && ctx.getParent().getParent().inRoot()) {
+            errorMessage = parser.getText();
+        }
+    }
+
+    private void onInt(JsonStreamContext ctx) throws IOException {
+        JsonStreamContext parent = ctx.getParent();
+        if (!named(parent, "usage") || !parent.getParent().inRoot()) {
+            return;
+        }
+        if (usage == null) {
+            usage = new Usage();
+        }
+        switch (ctx.getCurrentName()) {
+            case "prompt_tokens" -> usage.setPromptTokens(parser.getIntValue());
+            case "completion_tokens" -> usage.setCompletionTokens(parser.getIntValue());
+            case "total_tokens" -> usage.setTotalTokens(parser.getIntValue());
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Whether ctx is the object of an element in the root "choices" array
+     */
+    private boolean isChoice(JsonStreamContext ctx) {
+        JsonStreamContext array = ctx.getParent();
+        return array != null && array.inArray()
+                && named(array.getParent(), "choices") && array.getParent().getParent().inRoot();
+    }
+
+    private void emit(List<StreamEvent> events) {
+        if (content != null || finishReason != null || usage != null || errorMessage != null) {
+            events.add(new StreamEvent(content, finishReason, usage, errorMessage));
+        }
+        resetEvent();
+    }
+
+    private void resetEvent() {
+        content = null;
+        finishReason = null;
+        usage = null;
+        errorMessage = null;
+    }
+
+    private void append(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (pending.length < pendingLength + length) {
+            pending = Arrays.copyOf(pending, Math.max(pendingLength + length, pending.length * 2));
+        }
+        System.arraycopy(bytes, start, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private static boolean named(JsonStreamContext ctx, String name) {
+        return ctx != null && name.equals(ctx.getCurrentName());
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        return end - start >= prefix.length
+                && Arrays.equals(bytes, start, start + prefix.length, prefix, 0, prefix.length);
+    }
+}
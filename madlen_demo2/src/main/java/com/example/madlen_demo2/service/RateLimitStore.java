@@ -0,0 +1,37 @@
+package com.example.madlen_demo2.service;
+
+import java.time.Duration;
+
+/**
+ * Token bucket state for rate limiting, keyed by user and limit.
+ * Buckets start full and refill continuously up to their capacity.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Take permits if the bucket holds enough of them
+     *
+     * @return {@link Duration#ZERO} when they were taken, otherwise how long until they would be available
+     */
+    Duration tryAcquire(String key, Bucket bucket, long permits);
+
+    /**
+     * Take permits unconditionally, e.g. for usage that is only known afterwards.
+     * The bucket may go negative; negative permits give permits back.
+     */
+    void consume(String key, Bucket bucket, long permits);
+
+    record Bucket(long capacity, double refillPerSecond) {
+
+        /**
+         * Level after refilling from {@code tokens} over the given time, capped at the capacity
+         */
+        double refill(double tokens, long elapsedNanos) {
+            return Math.min(capacity, tokens + Math.max(0, elapsedNanos) * refillPerSecond / 1_000_000_000d);
+        }
+
+        Duration timeUntil(double available, long permits) {
+            return Duration.ofNanos((long) Math.ceil((permits - available) / refillPerSecond * 1_000_000_000d));
+        }
+    }
+}
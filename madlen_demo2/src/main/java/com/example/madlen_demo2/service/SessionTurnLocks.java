@@ -0,0 +1,245 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs chat turns of the same session one after another, so each turn sees the
+ * previous one's messages and appends land in conversation order. Every session
+ * has its own lock, created on first use and dropped once nobody holds or waits
+ * for it, so a long streaming reply never delays another session. Waiting is
+ * non-blocking; the streaming path holds its lock until the reply has been recorded.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SessionTurnLocks {
+
+    private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
+
+    // Locks with a holder or waiters; the count of both is kept on the lock
+    private final Map<String, AsyncLock> locks = new ConcurrentHashMap<>();
+    private Timer lockWait;
+
+    @PostConstruct
+    void init() {
+        lockWait = Timer.builder("chat.session.lock.wait")
+                .description("Time a chat turn waited for the previous turn of its session")
+                .register(meterRegistry);
+        Gauge.builder("chat.session.locks", locks, Map::size)
+                .description("Sessions with a turn running or waiting")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a blocking turn while holding the session's lock
+     *
+     * @throws ChatExceptions.SessionBusyException if the previous turn doesn't finish within the acquire timeout
+     */
+    public <T> T withLock(String sessionId, Supplier<T> turn) {
+        Permit permit = acquire(sessionId).block();
+        try {
+            return turn.get();
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * Run a streaming turn while holding the session's lock; released on completion, error or cancel
+     */
+    public <T> Flux<T> withLock(String sessionId, Flux<T> turn) {
+        return withLock(sessionId, turn, Mono.empty());
+    }
+
+    /**
+     * Run a streaming turn while holding the session's lock. When the turn is cancelled, {@code onCancel}
+     * runs before the lock is released, so whatever it records still comes before the next turn.
+     */
+    public <T> Flux<T> withLock(String sessionId, Flux<T> turn, Mono<Void> onCancel) {
+        return Flux.usingWhen(acquire(sessionId), permit -> turn,
+                permit -> Mono.fromRunnable(permit::release),
+                (permit, error) -> Mono.fromRunnable(permit::release),
+                permit -> onCancel
+                        .doOnError(e -> log.warn("Cleanup of cancelled turn of session {} failed: {}", sessionId, e.getMessage()))
+                        .onErrorComplete()
+                        .doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * Sessions whose lock is currently held or waited for
+     */
+    int activeLocks() {
+        return locks.size();
+    }
+
+    private Mono<Permit> acquire(String sessionId) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return reference(sessionId).acquire(chatProperties.getTurns().getAcquireTimeout())
+                    .doOnNext(permit -> lockWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private AsyncLock reference(String sessionId) {
+        return locks.compute(sessionId, (id, lock) -> {
+            AsyncLock referenced = lock == null ? new AsyncLock(id) : lock;
+            referenced.references++;
+            return referenced;
+        });
+    }
+
+    private void dereference(AsyncLock lock) {
+        locks.computeIfPresent(lock.sessionId, (id, current) -> --current.references == 0 ? null : current);
+    }
+
+    /**
+     * Held lock; releasing it more than once has no effect
+     */
+    final class Permit {
+
+        private final AsyncLock lock;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(AsyncLock lock) {
+            this.lock = lock;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                lock.release();
+                dereference(lock);
+            }
+        }
+    }
+
+    /**
+     * FIFO mutex whose waiters are Mono subscribers instead of parked threads
+     */
+    final class AsyncLock {
+
+        private final String sessionId;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private boolean held;
+        // Holder plus waiters; only changed inside the map's compute functions
+        private int references;
+
+        AsyncLock(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * Wait for the lock for at most the timeout. The timeout claims the waiter the same way a grant
+         * does, so a permit is either delivered or never handed out, never lost in between.
+         */
+        Mono<Permit> acquire(Duration timeout) {
+            return Mono.create(sink -> {
+                Waiter waiter = new Waiter(sink, new Permit(this));
+                boolean free;
+                synchronized (this) {
+                    free = !held;
+                    if (free) {
+                        held = true;
+                    } else {
+                        waiters.addLast(waiter);
+                    }
+                }
+                // Cancelled before the permit was delivered: leave the queue or hand the lock on
+                sink.onCancel(() -> {
+                    if (waiter.cancel()) {
+                        leave(waiter);
+                    } else {
+                        waiter.permit.release();
+                    }
+                });
+                if (free) {
+                    waiter.grant();
+                    return;
+                }
+                Disposable timer = Schedulers.parallel().schedule(() -> {
+                    if (waiter.cancel()) {
+                        leave(waiter);
+                        log.warn("Session {} is still busy with a previous message", sessionId);
+                        sink.error(new ChatExceptions.SessionBusyException(sessionId));
+                    }
+                }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+                sink.onDispose(timer);
+            });
+        }
+
+        private void leave(Waiter waiter) {
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+            dereference(this);
+        }
+
+        void release() {
+            while (true) {
+                Waiter next;
+                synchronized (this) {
+                    next = waiters.pollFirst();
+                    if (next == null) {
+                        held = false;
+                        return;
+                    }
+                }
+                // Skip waiters that gave up while queued
+                if (next.grant()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Permit> sink;
+        private final Permit permit;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Permit> sink, Permit permit) {
+            this.sink = sink;
+            this.permit = permit;
+        }
+
+        boolean grant() {
+            if (state.compareAndSet(WAITING, GRANTED)) {
+                sink.success(permit);
+                return true;
+            }
+            return false;
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+    }
+}
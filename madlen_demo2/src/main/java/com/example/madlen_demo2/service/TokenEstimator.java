@@ -0,0 +1,32 @@
+package com.example.madlen_demo2.service;
+
+/**
+ * Cheap local token count estimate, close enough for budgeting without a real tokenizer.
+ * ASCII text averages about four characters per token; other scripts (CJK, Cyrillic,
+ * emoji...) come out closer to one token per character.
+ */
+final class TokenEstimator {
+
+    // Role markers and separators the chat template adds around every message
+    static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Retries, hedging and fallback chains around upstream calls.
+ *
+ * A call for a model is retried with jittered backoff when it fails transiently (429, 408, 5xx,
+ * connection errors). When hedging is on and the model has a fallback, the first fallback is called
+ * as well once the call takes longer than the model's recent p95 latency, or right away when the call
+ * fails; the first to answer wins and the other is cancelled. Remaining fallbacks are tried in order.
+ *
+ * Calls to a model whose circuit is open fail right away with ModelUnavailableException, which
+ * moves on to the fallbacks; fallbacks with an open circuit are skipped.
+ *
+ * For streams "answering" means the first token: once tokens have been emitted the stream is never
+ * retried, hedged or switched to another model, since the client has already seen part of the reply.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpstreamResilience {
+
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(408, 429, 500, 502, 503, 504);
+
+    // Failures that would be the same for any model
+    private static final Set<Integer> FINAL_STATUSES = Set.of(400, 401, 413);
+
+    private final OpenRouterProperties properties;
+    private final ModelRegistry modelRegistry;
+    private final ModelLatencyTracker latencyTracker;
+    private final ModelHealthTracker healthTracker;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Run an upstream call for a model with retries, hedging and the model's fallback chain
+     *
+     * @param needsVision only fallbacks that accept images are used
+     * @param streaming   whether latencies are time to first token rather than time to the whole answer
+     * @param call        starts the call for a model id
+     */
+    public <T> Flux<T> call(String model, boolean needsVision, boolean streaming, Function<String, Flux<T>> call) {
+        List<String> fallbacks = fallbacksFor(model, needsVision);
+        Flux<T> result = attempt(model, streaming, call);
+        int next = 0;
+
+        if (properties.getHedging().isEnabled() && !fallbacks.isEmpty()) {
+            result = hedged(model, fallbacks.get(0), streaming, call);
+            next = 1;
+        }
+
+        for (String fallback : fallbacks.subList(next, fallbacks.size())) {
+            result = result.onErrorResume(UpstreamResilience::shouldFallBack, e -> {
+                log.warn("Upstream call for {} failed ({}), trying fallback {}", model, describe(e), fallback);
+                meterRegistry.counter("openrouter.fallbacks", "model", model, "fallback", fallback).increment();
+                return attempt(fallback, streaming, call);
+            });
+        }
+        return result.onErrorMap(StreamInterruptedException.class, Throwable::getCause);
+    }
+
+    /**
+     * Race the model against its alternate, which starts after the hedging delay or as soon as the model fails
+     */
+    private <T> Flux<T> hedged(String model, String alternate, boolean streaming, Function<String, Flux<T>> call) {
+        return Flux.defer(() -> {
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Flux<T> primary = attempt(model, streaming, call).doOnError(e -> {
+                if (shouldFallBack(e)) {
+                    primaryFailed.tryEmitEmpty();
+                } else {
+                    primaryFailed.tryEmitError(e);
+                }
+            });
+
+            Duration delay = hedgeDelay(model, streaming);
+            Mono<Void> slow = Mono.delay(delay).doOnNext(tick -> {
+                log.info("No answer from {} within {}, hedging with {}", model, delay, alternate);
+                meterRegistry.counter("openrouter.hedges", "model", model, "alternate", alternate).increment();
+            }).then();
+            Mono<Void> failed = primaryFailed.asMono().doOnSuccess(v -> {
+                log.warn("Upstream call for {} failed, trying fallback {}", model, alternate);
+                meterRegistry.counter("openrouter.fallbacks", "model", model, "fallback", alternate).increment();
+            });
+
+            return Flux.firstWithValue(primary, Mono.firstWithSignal(slow, failed).thenMany(attempt(alternate, streaming, call)))
+                    // Both failed: report the model's own failure
+                    .onErrorMap(e -> e instanceof NoSuchElementException && e.getCause() != null,
+                            e -> Exceptions.unwrapMultiple(e.getCause()).get(0));
+        });
+    }
+
+    /**
+     * One model's call with retries; failures after the first value are marked as final.
+     * Each try goes through the model's circuit breaker and feeds its health.
+     */
+    private <T> Flux<T> attempt(String model, boolean streaming, Function<String, Flux<T>> call) {
+        return Flux.defer(() -> {
+            ModelHealthTracker.Admission admission = healthTracker.tryAcquire(model);
+            if (admission == ModelHealthTracker.Admission.REJECTED) {
+                meterRegistry.counter("openrouter.model.rejected", "model", model, "reason", "circuit-open").increment();
+                return Flux.<T>error(new ChatExceptions.ModelUnavailableException(model));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean answered = new AtomicBoolean();
+            return call.apply(model)
+                    .doOnNext(value -> {
+                        if (answered.compareAndSet(false, true)) {
+                            long nanos = System.nanoTime() - start;
+                            latencyTracker.record(latencyKey(model, streaming), nanos);
+                            healthTracker.recordSuccess(model, nanos, streaming);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (isModelFailure(e)) {
+                            healthTracker.recordFailure(model);
+                        }
+                    })
+                    // Also on cancel, e.g. the losing side of a hedge, which says nothing about the model
+                    .doFinally(signal -> healthTracker.release(model, admission))
+                    .onErrorMap(e -> answered.get(), StreamInterruptedException::new);
+        }).retryWhen(retrySpec(model));
+    }
+
+    private Retry retrySpec(String model) {
+        OpenRouterProperties.Retry config = properties.getRetry();
+        if (!config.isEnabled() || config.getMaxAttempts() <= 1) {
+            return Retry.max(0).onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        }
+        return Retry.backoff(config.getMaxAttempts() - 1, config.getInitialBackoff())
+                .maxBackoff(config.getMaxBackoff())
+                .jitter(config.getJitter())
+                .filter(UpstreamResilience::isRetryable)
+                .doBeforeRetry(signal -> {
+                    log.info("Retrying {} after {} (retry {})", model, describe(signal.failure()), signal.totalRetries() + 1);
+                    meterRegistry.counter("openrouter.retries", "model", model).increment();
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private Duration hedgeDelay(String model, boolean streaming) {
+        OpenRouterProperties.Hedging config = properties.getHedging();
+        return latencyTracker.percentile(latencyKey(model, streaming), config.getPercentile(), config.getMinSamples())
+                .map(p -> p.compareTo(config.getMinDelay()) < 0 ? config.getMinDelay() : p)
+                .map(p -> p.compareTo(config.getMaxDelay()) > 0 ? config.getMaxDelay() : p)
+                .orElse(config.getInitialDelay());
+    }
+
+    private List<String> fallbacksFor(String model, boolean needsVision) {
+        return properties.getFallbacks().getOrDefault(model, List.of()).stream()
+                .filter(fallback -> !fallback.equals(model))
+                .filter(modelRegistry::isAvailable)
+                .filter(healthTracker::isCallable)
+                .filter(fallback -> !needsVision || modelRegistry.supportsVision(fallback))
+                .distinct()
+                .toList();
+    }
+
+    private static String latencyKey(String model, boolean streaming) {
+        return streaming ? model + "|first-token" : model;
+    }
+
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return RETRYABLE_STATUSES.contains(response.getStatusCode().value());
+        }
+        // No response at all, e.g. connection refused or reset before the headers
+        return e instanceof WebClientRequestException;
+    }
+
+    /**
+     * Failures that say something about the model or its provider, as opposed to the request or this service
+     */
+    static boolean isModelFailure(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return !FINAL_STATUSES.contains(response.getStatusCode().value());
+        }
+        return e instanceof WebClientRequestException
+                || e instanceof TimeoutException
+                || e instanceof ChatExceptions.OpenRouterException;
+    }
+
+    static boolean shouldFallBack(Throwable e) {
+        if (e instanceof StreamInterruptedException
+                || e instanceof ChatExceptions.ApiKeyNotConfiguredException
+                || e instanceof ChatExceptions.VisionNotSupportedException
+                || e instanceof ChatExceptions.InvalidImageException) {
+            return false;
+        }
+        if (e instanceof WebClientResponseException response) {
+            return !FINAL_STATUSES.contains(response.getStatusCode().value());
+        }
+        return true;
+    }
+
+    private static String describe(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return "HTTP " + response.getStatusCode().value();
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    /**
+     * Failure of a stream that had already emitted values
+     */
+    private static final class StreamInterruptedException extends RuntimeException {
+        StreamInterruptedException(Throwable cause) {
+            super(cause.getMessage(), cause, false, false);
+        }
+    }
+}
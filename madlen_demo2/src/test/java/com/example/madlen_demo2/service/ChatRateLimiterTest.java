@@ -0,0 +1,89 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.dto.ChatRequest;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatRateLimiterTest {
+
+    private final ChatProperties properties = new ChatProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private InMemoryRateLimitStore store;
+    private ChatRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        // One permit and one token a minute, so nothing refills during a test
+        ChatProperties.RateLimit config = properties.getRateLimit();
+        config.setRequestsPerMinute(1);
+        config.setRequestBurst(2);
+        config.setTokensPerMinute(1);
+        config.setTokenBurst(10);
+        store = new InMemoryRateLimitStore(properties);
+        limiter = new ChatRateLimiter(store, properties, meterRegistry);
+    }
+
+    @Test
+    void rejectsOnceTheRequestBurstIsUsed() {
+        limiter.acquire("u1", message("hi"));
+        limiter.acquire("u1", message("hi"));
+
+        assertThatThrownBy(() -> limiter.acquire("u1", message("hi")))
+                .isInstanceOf(ChatExceptions.RateLimitExceededException.class)
+                .hasMessageContaining("requests")
+                .satisfies(e -> assertThat(((ChatExceptions.RateLimitExceededException) e).getRetryAfterSeconds()).isEqualTo(60));
+        assertThat(meterRegistry.counter("chat.rate-limit.rejected", "limit", "requests").count()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenRejectionGivesTheRequestPermitBack() {
+        // 40 ASCII characters estimate to the whole token burst
+        limiter.acquire("u1", message("x".repeat(40)));
+
+        assertThatThrownBy(() -> limiter.acquire("u1", message("more")))
+                .isInstanceOf(ChatExceptions.RateLimitExceededException.class)
+                .hasMessageContaining("tokens");
+
+        // The second request was refunded, so one request permit of the burst is left
+        RateLimitStore.Bucket requests = new RateLimitStore.Bucket(2, 1 / 60d);
+        assertThat(store.tryAcquire("requests:u1", requests, 1)).isZero();
+        assertThat(store.tryAcquire("requests:u1", requests, 1)).isPositive();
+    }
+
+    @Test
+    void messageLargerThanTheTokenBurstIsStillAdmittedOnAFullBucket() {
+        limiter.acquire("u1", message("x".repeat(400)));
+
+        assertThatThrownBy(() -> limiter.acquire("u1", message("x")))
+                .hasMessageContaining("tokens");
+    }
+
+    @Test
+    void replyTokensAreChargedAfterwards() {
+        limiter.recordReply("u1", "x".repeat(40));
+
+        assertThatThrownBy(() -> limiter.acquire("u1", message("x")))
+                .isInstanceOf(ChatExceptions.RateLimitExceededException.class)
+                .hasMessageContaining("tokens");
+        limiter.acquire("u2", message("x"));
+    }
+
+    @Test
+    void disabledLimiterAdmitsEverything() {
+        properties.getRateLimit().setEnabled(false);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire("u1", message("x".repeat(400)));
+        }
+    }
+
+    private static ChatRequest message(String text) {
+        return ChatRequest.builder().sessionId("s1").message(text).build();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.StreamCheckpoint;
+import com.example.madlen_demo2.repository.StreamCheckpointRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatStreamRegistryTest {
+
+    private final StreamCheckpointRepository checkpointRepository = mock(StreamCheckpointRepository.class);
+    private final Map<String, StreamCheckpoint> checkpoints = new ConcurrentHashMap<>();
+    private final ChatProperties properties = new ChatProperties();
+    private final Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+    private ChatStreamRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        when(checkpointRepository.save(any(StreamCheckpoint.class))).thenAnswer(invocation -> {
+            StreamCheckpoint checkpoint = invocation.getArgument(0);
+            checkpoints.put(checkpoint.getId(), checkpoint);
+            return Mono.just(checkpoint);
+        });
+        when(checkpointRepository.findById(anyString()))
+                .thenAnswer(invocation -> Mono.justOrEmpty(checkpoints.get(invocation.<String>getArgument(0))));
+        registry = new ChatStreamRegistry(checkpointRepository, properties, new SimpleMeterRegistry());
+        registry.init();
+    }
+
+    @Test
+    void resumeReplaysTheChunksAfterLastEventIdAndContinuesLive() {
+        List<ServerSentEvent<String>> initial = new CopyOnWriteArrayList<>();
+        registry.start("s1", turnStarted -> upstream.asFlux()).subscribe(initial::add);
+        emit("Hel", "lo", " wor");
+        String streamId = streamId(initial.get(0));
+
+        List<ServerSentEvent<String>> resumed = new CopyOnWriteArrayList<>();
+        registry.resume(streamId, streamId + ":1").subscribe(resumed::add);
+        emit("ld");
+        upstream.tryEmitComplete();
+
+        assertThat(resumed).extracting(ServerSentEvent::data).containsExactly("lo", " wor", "ld", "");
+        assertThat(resumed).extracting(ServerSentEvent::id)
+                .containsExactly(streamId + ":2", streamId + ":3", streamId + ":4", streamId + ":4");
+        assertThat(resumed.get(3).event()).isEqualTo(ChatStreamRegistry.DONE_EVENT);
+    }
+
+    @Test
+    void resumeSendsASnapshotWhenTheChunksHaveLeftTheBuffer() {
+        properties.getStreams().setBufferChunks(2);
+        List<ServerSentEvent<String>> initial = new CopyOnWriteArrayList<>();
+        registry.start("s1", turnStarted -> upstream.asFlux()).subscribe(initial::add);
+        emit("a", "b", "c", "d");
+        upstream.tryEmitComplete();
+        String streamId = streamId(initial.get(0));
+
+        List<ServerSentEvent<String>> resumed = registry.resume(streamId, streamId + ":1").collectList().block();
+
+        assertThat(resumed).extracting(ServerSentEvent::event)
+                .containsExactly(ChatStreamRegistry.SNAPSHOT_EVENT, null, null, ChatStreamRegistry.DONE_EVENT);
+        assertThat(resumed).extracting(ServerSentEvent::data).containsExactly("ab", "c", "d", "");
+    }
+
+    @Test
+    void resumeFallsBackToTheCheckpointOnceTheStreamWasEvicted() throws InterruptedException {
+        properties.getStreams().setRetention(Duration.ZERO);
+        List<ServerSentEvent<String>> initial = new CopyOnWriteArrayList<>();
+        registry.start("s1", turnStarted -> upstream.asFlux()).subscribe(initial::add);
+        emit("Hello", " world");
+        upstream.tryEmitComplete();
+        String streamId = streamId(initial.get(0));
+
+        Thread.sleep(5);
+        registry.evictExpired();
+        List<ServerSentEvent<String>> resumed = registry.resume(streamId, streamId + ":1").collectList().block();
+
+        assertThat(resumed).extracting(ServerSentEvent::event)
+                .containsExactly(ChatStreamRegistry.SNAPSHOT_EVENT, ChatStreamRegistry.DONE_EVENT);
+        assertThat(resumed.get(0).data()).isEqualTo("Hello world");
+        assertThat(resumed.get(0).id()).isEqualTo(streamId + ":2");
+        assertThatThrownBy(() -> registry.resume("unknown", null).blockLast())
+                .isInstanceOf(ChatExceptions.StreamNotFoundException.class);
+    }
+
+    @Test
+    void watcherJoinsARunningStreamFromItsFirstChunk() {
+        registry.start("s1", turnStarted -> Flux.defer(() -> {
+            turnStarted.run();
+            return upstream.asFlux();
+        })).subscribe();
+        emit("Hello");
+
+        List<ServerSentEvent<String>> watched = new CopyOnWriteArrayList<>();
+        registry.watch("s1").subscribe(watched::add);
+        emit(" world");
+        upstream.tryEmitComplete();
+
+        assertThat(watched).extracting(ServerSentEvent::data).containsExactly("Hello", " world", "");
+        // Nothing runs for the session any more
+        assertThat(registry.watch("s1").collectList().block()).isEmpty();
+    }
+
+    @Test
+    void watcherFindsNothingBeforeTheTurnHasStarted() {
+        AtomicReference<Runnable> turnStarted = new AtomicReference<>();
+        registry.start("s1", started -> {
+            turnStarted.set(started);
+            return upstream.asFlux();
+        }).subscribe();
+
+        assertThat(registry.watch("s1").collectList().block()).isEmpty();
+
+        turnStarted.get().run();
+        List<ServerSentEvent<String>> watched = new CopyOnWriteArrayList<>();
+        registry.watch("s1").subscribe(watched::add);
+        emit("reply");
+        upstream.tryEmitComplete();
+        assertThat(watched).extracting(ServerSentEvent::data).containsExactly("reply", "");
+    }
+
+    @Test
+    void lastDisconnectCancelsTheGenerationAndKeepsThePartialReply() {
+        // Stands in for ChatService, which records what was generated when its turn is cancelled
+        StringBuffer generated = new StringBuffer();
+        AtomicReference<String> recorded = new AtomicReference<>();
+        List<ServerSentEvent<String>> initial = new CopyOnWriteArrayList<>();
+        Disposable connection = registry.start("s1", turnStarted -> upstream.asFlux()
+                        .doOnNext(generated::append)
+                        .doOnCancel(() -> recorded.set(generated.toString())))
+                .subscribe(initial::add);
+        emit("Hel", "lo");
+        String streamId = streamId(initial.get(0));
+
+        connection.dispose();
+
+        assertThat(recorded.get()).isEqualTo("Hello");
+        assertThat(checkpoints.get(streamId).getStatus()).isEqualTo(StreamCheckpoint.CANCELLED);
+        assertThat(checkpoints.get(streamId).getContent()).isEqualTo("Hello");
+        // Still resumable up to where it stopped
+        List<ServerSentEvent<String>> resumed = registry.resume(streamId, streamId + ":1").collectList().block();
+        assertThat(resumed).extracting(ServerSentEvent::data).containsExactly("lo", "The reply was stopped after all clients disconnected");
+        assertThat(resumed.get(1).event()).isEqualTo(ChatStreamRegistry.ERROR_EVENT);
+    }
+
+    @Test
+    void reconnectWithinTheGracePeriodKeepsTheGenerationRunning() throws InterruptedException {
+        properties.getStreams().setAbandonAfter(Duration.ofMillis(100));
+        AtomicReference<String> recorded = new AtomicReference<>();
+        List<ServerSentEvent<String>> initial = new CopyOnWriteArrayList<>();
+        Disposable connection = registry.start("s1", turnStarted -> upstream.asFlux()
+                        .doOnCancel(() -> recorded.set("cancelled")))
+                .subscribe(initial::add);
+        emit("Hel");
+        String streamId = streamId(initial.get(0));
+
+        connection.dispose();
+        List<ServerSentEvent<String>> resumed = new CopyOnWriteArrayList<>();
+        registry.resume(streamId, streamId + ":1").subscribe(resumed::add);
+        Thread.sleep(200);
+        emit("lo");
+        upstream.tryEmitComplete();
+
+        assertThat(recorded.get()).isNull();
+        assertThat(resumed).extracting(ServerSentEvent::data).containsExactly("lo", "");
+    }
+
+    private void emit(String... chunks) {
+        for (String chunk : chunks) {
+            upstream.tryEmitNext(chunk);
+        }
+    }
+
+    private static String streamId(ServerSentEvent<String> event) {
+        return event.id().substring(0, event.id().lastIndexOf(':'));
+    }
+}
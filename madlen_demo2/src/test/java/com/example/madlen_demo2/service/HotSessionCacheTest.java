@@ -0,0 +1,199 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.model.ChatMessage;
+import com.example.madlen_demo2.model.ChatSession;
+import com.example.madlen_demo2.repository.ChatSessionRepository;
+import com.example.madlen_demo2.repository.ReactiveChatSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HotSessionCacheTest {
+
+    // Messages compare by value, so a fixed timestamp makes equal instances for the same contents
+    private static final Instant SENT_AT = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final ChatSessionRepository repository = mock(ChatSessionRepository.class);
+    private final ChatProperties properties = new ChatProperties();
+    private HotSessionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        properties.getHotSessions().setFlushAfterAppends(3);
+        properties.getHotSessions().setFlushInterval(Duration.ofHours(1));
+        properties.getHotSessions().setSweepInterval(Duration.ofMillis(20));
+        when(repository.appendMessages(eq("s1"), anyList(), any(), any(), any())).thenReturn(Optional.of(2L));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        cache.shutdown();
+    }
+
+    @Test
+    void writesABatchOnceEnoughMessagesAreBuffered() {
+        start();
+        ChatSession session = session(1L);
+
+        append(session, "one", "two");
+        verify(repository, after(100).never()).appendMessages(any(), anyList(), any(), any(), any());
+
+        append(session, "three");
+        verify(repository, timeout(1000)).appendMessages(eq("s1"), eq(messages("one", "two", "three")), isNull(), isNull(), eq(1L));
+    }
+
+    @Test
+    void writesBufferedMessagesAfterTheFlushInterval() {
+        properties.getHotSessions().setFlushInterval(Duration.ofMillis(50));
+        start();
+
+        append(session(1L), "one");
+
+        verify(repository, timeout(1000)).appendMessages(eq("s1"), eq(messages("one")), isNull(), isNull(), eq(1L));
+    }
+
+    @Test
+    void reappliesTheBatchOnTopOfAConcurrentWrite() {
+        start();
+        ChatSession session = session(1L);
+        ChatSession current = session(4L);
+        current.getMessages().add(message("written elsewhere"));
+        when(repository.appendMessages(eq("s1"), anyList(), any(), any(), eq(1L))).thenReturn(Optional.empty());
+        when(repository.appendMessages(eq("s1"), anyList(), any(), any(), eq(4L))).thenReturn(Optional.of(5L));
+        when(repository.findById("s1")).thenReturn(Optional.of(current));
+
+        append(session, "mine");
+        cache.flush("s1");
+
+        verify(repository).appendMessages(eq("s1"), eq(messages("mine")), isNull(), isNull(), eq(4L));
+        ChatSession resynced = cache.findById("s1").orElseThrow();
+        assertThat(resynced.getMessages()).extracting(ChatMessage::getContent).containsExactly("written elsewhere", "mine");
+        assertThat(resynced.getVersion()).isEqualTo(5L);
+    }
+
+    @Test
+    void modelSwitchKeepsTheCachedVersionInStep() {
+        start();
+        when(repository.updateSelectedModel("s1", "other-model")).thenReturn(Optional.of(3L));
+        append(session(1L), "one");
+
+        assertThat(cache.updateSelectedModel("s1", "other-model")).isTrue();
+        append(cache.findById("s1").orElseThrow(), "two");
+        cache.flush("s1");
+
+        verify(repository).appendMessages(eq("s1"), eq(messages("one")), isNull(), isNull(), eq(1L));
+        verify(repository).appendMessages(eq("s1"), eq(messages("two")), isNull(), isNull(), eq(3L));
+        verify(repository, never()).findById(any());
+    }
+
+    @Test
+    void storedSummaryKeepsTheCachedVersionInStep() {
+        start();
+        append(session(1L), "one");
+        cache.flush("s1");
+
+        cache.summaryStored("s1", "summary", 1, 3L);
+        append(cache.findById("s1").orElseThrow(), "two");
+        cache.flush("s1");
+
+        verify(repository).appendMessages(eq("s1"), eq(messages("two")), isNull(), isNull(), eq(3L));
+        verify(repository, never()).findById(any());
+        assertThat(cache.findById("s1").orElseThrow().getSummary()).isEqualTo("summary");
+    }
+
+    @Test
+    void keepsMessagesBufferedWhenTheWriteFails() {
+        start();
+        when(repository.appendMessages(eq("s1"), anyList(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("mongo down"))
+                .thenReturn(Optional.of(2L));
+
+        append(session(1L), "one");
+        cache.flush("s1");
+        cache.flush("s1");
+
+        verify(repository, times(2)).appendMessages(eq("s1"), eq(messages("one")), isNull(), isNull(), eq(1L));
+    }
+
+    @Test
+    void queuesOneBackgroundFlushPerSessionWhileAWriteIsStuck() throws InterruptedException {
+        properties.getHotSessions().setFlushInterval(Duration.ofMillis(1));
+        CountDownLatch unblock = new CountDownLatch(1);
+        when(repository.appendMessages(eq("s1"), anyList(), any(), any(), any())).thenAnswer(invocation -> {
+            unblock.await(5, TimeUnit.SECONDS);
+            return Optional.of(2L);
+        });
+        start();
+
+        append(session(1L), "one");
+        // Many sweeps pass while the first write hangs
+        Thread.sleep(200);
+
+        unblock.countDown();
+        verify(repository, after(200).times(1)).appendMessages(eq("s1"), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void shutdownWritesWhateverIsStillBuffered() throws InterruptedException {
+        start();
+
+        append(session(1L), "one");
+        verify(repository, never()).appendMessages(any(), anyList(), any(), any(), any());
+        cache.shutdown();
+
+        verify(repository).appendMessages(eq("s1"), eq(messages("one")), isNull(), isNull(), eq(1L));
+    }
+
+    private void start() {
+        cache = new HotSessionCache(repository, mock(ReactiveChatSessionRepository.class), properties, new SimpleMeterRegistry());
+        cache.init();
+    }
+
+    /**
+     * Append as ChatService does: the caller's copy already contains the new messages
+     */
+    private void append(ChatSession session, String... contents) {
+        List<ChatMessage> added = messages(contents);
+        session.getMessages().addAll(added);
+        cache.append(session, added, null, null);
+    }
+
+    private static ChatSession session(long version) {
+        return ChatSession.builder().id("s1").userId("u1").messages(new ArrayList<>()).version(version).build();
+    }
+
+    private static List<ChatMessage> messages(String... contents) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (String content : contents) {
+            messages.add(message(content));
+        }
+        return messages;
+    }
+
+    private static ChatMessage message(String content) {
+        return ChatMessage.builder().role("user").content(content).timestamp(SENT_AT).build();
+    }
+}
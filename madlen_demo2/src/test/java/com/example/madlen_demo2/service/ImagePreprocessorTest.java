@@ -0,0 +1,84 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import com.example.madlen_demo2.model.StoredImage;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImagePreprocessorTest {
+
+    private final ChatProperties properties = new ChatProperties();
+    private final MemoryImageStore imageStore = new MemoryImageStore();
+    private final ImagePreprocessor preprocessor = new ImagePreprocessor(imageStore, properties);
+
+    @Test
+    void downscalesLargeImagesToTheProfileEdge() throws IOException {
+        StoredImage original = png(4000, 3000);
+
+        StoredImage variant = preprocessor.prepare(original, "any-model");
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(variant.getData()));
+        assertThat(variant.getMediaType()).isEqualTo("image/jpeg");
+        assertThat(decoded.getWidth()).isEqualTo(1568);
+        assertThat(decoded.getHeight()).isEqualTo(1176);
+    }
+
+    @Test
+    void rejectsImagesAboveThePixelLimitWithoutDecodingThem() throws IOException {
+        properties.getImages().getPreprocessing().setMaxPixels(1_000_000);
+        StoredImage original = png(2000, 1000);
+
+        assertThatThrownBy(() -> preprocessor.prepare(original, "any-model"))
+                .isInstanceOf(ChatExceptions.InvalidImageException.class);
+        assertThat(imageStore.images).containsOnlyKeys("original");
+    }
+
+    @Test
+    void sendsTheOriginalWithoutASecondCopyWhenReencodingDoesNotShrinkIt() throws IOException {
+        StoredImage original = png(64, 64);
+
+        assertThat(preprocessor.prepare(original, "any-model")).isSameAs(original);
+        assertThat(imageStore.images).containsOnlyKeys("original");
+    }
+
+    private StoredImage png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY), "png", out);
+        StoredImage original = StoredImage.builder().id("original").mediaType("image/png").data(out.toByteArray()).build();
+        imageStore.images.put(original.getId(), original);
+        return original;
+    }
+
+    private static final class MemoryImageStore implements ImageStore {
+
+        private final Map<String, StoredImage> images = new HashMap<>();
+
+        @Override
+        public boolean exists(String imageId) {
+            return images.containsKey(imageId);
+        }
+
+        @Override
+        public void save(String imageId, String mediaType, InputStream data) throws IOException {
+            images.put(imageId, StoredImage.builder().id(imageId).mediaType(mediaType).data(data.readAllBytes()).build());
+        }
+
+        @Override
+        public Optional<StoredImage> load(String imageId) {
+            return Optional.ofNullable(images.get(imageId));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class InMemoryRateLimitStoreTest {
+
+    // One permit a minute: nothing measurable refills while a test runs
+    private static final RateLimitStore.Bucket SLOW = new RateLimitStore.Bucket(3, 1 / 60d);
+
+    private final InMemoryRateLimitStore store = new InMemoryRateLimitStore(new ChatProperties());
+
+    @Test
+    void refillsInProportionToElapsedTimeUpToTheCapacity() {
+        RateLimitStore.Bucket bucket = new RateLimitStore.Bucket(10, 2);
+
+        assertThat(bucket.refill(1, Duration.ofMillis(1500).toNanos())).isCloseTo(4, within(1e-9));
+        assertThat(bucket.refill(9, Duration.ofSeconds(5).toNanos())).isEqualTo(10);
+        // A clock that went backwards adds nothing
+        assertThat(bucket.refill(1, -1_000_000_000L)).isEqualTo(1);
+    }
+
+    @Test
+    void waitCoversTheMissingPermitsAtTheRefillRate() {
+        RateLimitStore.Bucket bucket = new RateLimitStore.Bucket(10, 2);
+
+        assertThat(bucket.timeUntil(0.5, 2)).isEqualTo(Duration.ofMillis(750));
+        assertThat(bucket.timeUntil(-3, 1)).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void startsFullAndRejectsOnceEmpty() {
+        assertThat(store.tryAcquire("u1", SLOW, 2)).isZero();
+        assertThat(store.tryAcquire("u1", SLOW, 1)).isZero();
+
+        Duration wait = store.tryAcquire("u1", SLOW, 1);
+        assertThat(wait).isBetween(Duration.ofSeconds(59), Duration.ofSeconds(60));
+        // Other keys have buckets of their own
+        assertThat(store.tryAcquire("u2", SLOW, 3)).isZero();
+    }
+
+    @Test
+    void rejectedRequestTakesNothing() {
+        assertThat(store.tryAcquire("u1", SLOW, 4)).isPositive();
+
+        assertThat(store.tryAcquire("u1", SLOW, 3)).isZero();
+    }
+
+    @Test
+    void consumeMayOverdrawAndNegativePermitsRefund() {
+        store.consume("u1", SLOW, 5);
+        // Two permits in debt: one permit is three minutes away
+        assertThat(store.tryAcquire("u1", SLOW, 1)).isBetween(Duration.ofSeconds(179), Duration.ofSeconds(180));
+
+        store.consume("u1", SLOW, -3);
+        assertThat(store.tryAcquire("u1", SLOW, 1)).isZero();
+        assertThat(store.tryAcquire("u1", SLOW, 1)).isPositive();
+    }
+
+    @Test
+    void refundIsCappedAtTheCapacity() {
+        store.consume("u1", SLOW, -10);
+
+        assertThat(store.tryAcquire("u1", SLOW, 3)).isZero();
+        assertThat(store.tryAcquire("u1", SLOW, 1)).isPositive();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.dto.OpenRouterDtos.Message;
+import com.example.madlen_demo2.model.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageFragmentCacheTest {
+
+    private static final Instant SENT_AT = Instant.parse("2025-01-01T10:00:00.123Z");
+
+    private MessageFragmentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MessageFragmentCache(new OpenRouterProperties(), new ObjectMapper(), new SimpleMeterRegistry());
+        cache.init();
+    }
+
+    @Test
+    void messagesWithTheSameHashCodeGetTheirOwnFragments() {
+        // Same role, length, millisecond and String.hashCode
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        String first = fragment("s1", message("Aa"));
+        String second = fragment("s1", message("BB"));
+
+        assertThat(first).contains("\"Aa\"");
+        assertThat(second).contains("\"BB\"");
+    }
+
+    @Test
+    void identicalMessagesOfDifferentSessionsAreNotShared() {
+        fragment("s1", message("hello"));
+
+        assertThat(fragment("s2", message("hello"), "from s2")).contains("from s2");
+    }
+
+    @Test
+    void reusesTheFragmentOfTheSameMessage() {
+        fragment("s1", message("hello"));
+
+        assertThat(fragment("s1", message("hello"), "rebuilt")).contains("\"hello\"");
+    }
+
+    private String fragment(String sessionId, ChatMessage message) {
+        return fragment(sessionId, message, message.getContent());
+    }
+
+    private String fragment(String sessionId, ChatMessage message, String encodedContent) {
+        byte[] fragment = cache.fragmentFor(sessionId, "model", message,
+                m -> Message.builder().role(m.getRole()).content(encodedContent).build());
+        return new String(fragment, StandardCharsets.UTF_8);
+    }
+
+    private static ChatMessage message(String content) {
+        return ChatMessage.builder().role("user").content(content).timestamp(SENT_AT).build();
+    }
+}
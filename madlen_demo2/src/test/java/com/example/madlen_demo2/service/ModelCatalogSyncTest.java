@@ -0,0 +1,89 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.model.AIModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelCatalogSyncTest {
+
+    private final AtomicReference<String> upstream = new AtomicReference<>();
+    private ModelRegistry registry;
+    private ModelCatalogSync sync;
+
+    @BeforeEach
+    void setUp() {
+        OpenRouterProperties properties = new OpenRouterProperties();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(upstream.get())
+                        .build()))
+                .build();
+        registry = new ModelRegistry(properties, null, null, null);
+        sync = new ModelCatalogSync(webClient, properties, registry, new SimpleMeterRegistry());
+        sync.registerMetrics();
+    }
+
+    @Test
+    void keepsAModelDisabledInConfigDisabled() {
+        registry.replace(List.of(model("on", true), model("off", false)), "config");
+        upstream.set(catalog("on", "off"));
+
+        assertThat(sync.refresh()).isTrue();
+
+        assertThat(registry.isAvailable("on")).isTrue();
+        assertThat(registry.isAvailable("off")).isFalse();
+    }
+
+    @Test
+    void restoresAModelThatReturnsUpstream() {
+        registry.replace(List.of(model("a", true), model("b", true)), "config");
+
+        upstream.set(catalog("a"));
+        sync.refresh();
+        assertThat(registry.isAvailable("b")).isFalse();
+
+        upstream.set(catalog("a", "b"));
+        sync.refresh();
+        assertThat(registry.isAvailable("b")).isTrue();
+    }
+
+    @Test
+    void reappliesTheCatalogToAReloadedList() {
+        registry.replace(List.of(model("a", true)), "config");
+        upstream.set(catalog("a"));
+        sync.refresh();
+
+        registry.replace(List.of(model("a", false), model("gone", true)), "admin");
+        sync.reapply();
+
+        assertThat(registry.isAvailable("a")).isFalse();
+        assertThat(registry.isAvailable("gone")).isFalse();
+        assertThat(registry.snapshot().source()).isEqualTo("catalog");
+    }
+
+    private static AIModel model(String id, boolean available) {
+        return AIModel.builder().id(id).name(id).available(available).build();
+    }
+
+    private static String catalog(String... ids) {
+        StringBuilder json = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < ids.length; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(ids[i]).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelConcurrencyLimiterTest {
+
+    private final OpenRouterProperties properties = new OpenRouterProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ModelConcurrencyLimiter limiter = new ModelConcurrencyLimiter(properties, meterRegistry);
+    // Errors of calls that are expected to succeed or keep running
+    private final List<Throwable> unexpected = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties.getConcurrency().setMaxPerModel(1);
+        properties.getConcurrency().setMaxQueue(1);
+        properties.getConcurrency().setAcquireTimeout(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void queuedCallRunsOnceTheSlotIsReleased() {
+        Sinks.Empty<Void> running = Sinks.empty();
+        List<String> order = new CopyOnWriteArrayList<>();
+        limiter.executeStream("m", running.asMono().thenMany(Flux.just("first"))).subscribe(order::add, unexpected::add);
+        limiter.executeMono("m", Mono.just("second")).subscribe(order::add, unexpected::add);
+        assertThat(order).isEmpty();
+        assertThat(queueDepth("m")).isEqualTo(1);
+
+        running.tryEmitEmpty();
+
+        assertThat(order).containsExactly("first", "second");
+        assertThat(inFlight("m")).isZero();
+        assertThat(unexpected).isEmpty();
+    }
+
+    @Test
+    void shedsRightAwayWhenTheQueueIsFull() {
+        hold("m");
+        hold("m");
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        limiter.executeMono("m", Mono.just("third")).subscribe(v -> { }, error::set);
+
+        assertThat(error.get()).isInstanceOf(ChatExceptions.ModelOverloadedException.class);
+        assertThat(meterRegistry.counter("openrouter.model.rejected", "model", "m", "reason", "queue-full").count())
+                .isEqualTo(1);
+        assertThat(queueDepth("m")).isEqualTo(1);
+        assertThat(unexpected).isEmpty();
+    }
+
+    @Test
+    void queuedCallTimesOutAndLeavesTheQueue() throws InterruptedException {
+        properties.getConcurrency().setAcquireTimeout(Duration.ofMillis(50));
+        Disposable holder = hold("m");
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch failed = new CountDownLatch(1);
+
+        limiter.executeMono("m", Mono.just("late")).subscribe(v -> { }, e -> {
+            error.set(e);
+            failed.countDown();
+        });
+
+        assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(error.get()).isInstanceOf(ChatExceptions.ModelBusyException.class);
+        assertThat(meterRegistry.counter("openrouter.model.rejected", "model", "m", "reason", "queue-timeout").count())
+                .isEqualTo(1);
+        assertThat(queueDepth("m")).isZero();
+
+        // The slot goes to the next caller instead of the one that gave up
+        holder.dispose();
+        assertThat(limiter.executeMono("m", Mono.just("next")).block()).isEqualTo("next");
+        assertThat(inFlight("m")).isZero();
+        assertThat(unexpected).isEmpty();
+    }
+
+    @Test
+    void grantRacingTheTimeoutNeverLosesTheSlot() throws InterruptedException {
+        properties.getConcurrency().setAcquireTimeout(Duration.ofMillis(1));
+        for (int i = 0; i < 500; i++) {
+            Sinks.Empty<Void> running = Sinks.empty();
+            CountDownLatch done = new CountDownLatch(2);
+            limiter.executeStream("m", running.asMono().thenMany(Flux.<String>empty()))
+                    .subscribe(v -> { }, e -> done.countDown(), done::countDown);
+            // Either runs or is rejected as busy; both are fine as long as the slot comes back
+            limiter.executeMono("m", Mono.just("waiter"))
+                    .subscribe(v -> { }, e -> done.countDown(), done::countDown);
+
+            Schedulers.parallel().schedule(running::tryEmitEmpty, 1, TimeUnit.MILLISECONDS);
+
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(inFlight("m")).isZero();
+            assertThat(queueDepth("m")).isZero();
+        }
+    }
+
+    @Test
+    void releasesTheSlotWhenTheCallFailsOrIsCancelled() {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        limiter.executeMono("m", Mono.error(new IllegalStateException("boom"))).subscribe(v -> { }, error::set);
+        hold("m").dispose();
+
+        assertThat(error.get()).hasMessage("boom");
+        assertThat(inFlight("m")).isZero();
+        assertThat(limiter.executeMono("m", Mono.just("ok")).block()).isEqualTo("ok");
+        assertThat(unexpected).isEmpty();
+    }
+
+    @Test
+    void otherModelsKeepTheirOwnSlots() {
+        hold("slow");
+        hold("slow");
+
+        assertThat(limiter.executeMono("fast", Mono.just("ok")).block()).isEqualTo("ok");
+        assertThat(unexpected).isEmpty();
+    }
+
+    private Disposable hold(String model) {
+        return limiter.executeStream(model, Flux.never()).subscribe(v -> { }, unexpected::add);
+    }
+
+    private double queueDepth(String model) {
+        return meterRegistry.get("openrouter.model.queue.depth").tag("model", model).gauge().value();
+    }
+
+    private double inFlight(String model) {
+        return meterRegistry.get("openrouter.model.in-flight").tag("model", model).gauge().value();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.service.ModelHealthTracker.Admission;
+import com.example.madlen_demo2.service.ModelHealthTracker.CircuitState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelHealthTrackerTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final OpenRouterProperties properties = new OpenRouterProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ModelHealthTracker tracker = new ModelHealthTracker(properties, meterRegistry);
+
+    @BeforeEach
+    void setUp() {
+        properties.getRouting().setFailureThreshold(3);
+        properties.getRouting().setOpenDuration(Duration.ofMillis(50));
+        properties.getRouting().setHalfOpenProbes(1);
+    }
+
+    @Test
+    void opensAfterARunOfConsecutiveFailures() {
+        tracker.recordFailure("m");
+        tracker.recordFailure("m");
+        tracker.recordSuccess("m", SECOND, false);
+        tracker.recordFailure("m");
+        tracker.recordFailure("m");
+        assertThat(state("m")).isEqualTo(CircuitState.CLOSED);
+
+        tracker.recordFailure("m");
+
+        assertThat(state("m")).isEqualTo(CircuitState.OPEN);
+        assertThat(tracker.tryAcquire("m")).isEqualTo(Admission.REJECTED);
+        assertThat(tracker.isCallable("m")).isFalse();
+        assertThat(tracker.score("m")).isZero();
+    }
+
+    @Test
+    void letsOneTrialCallThroughOnceTheOpenDurationHasPassed() throws InterruptedException {
+        open("m");
+        Thread.sleep(80);
+
+        assertThat(tracker.isCallable("m")).isTrue();
+        assertThat(tracker.tryAcquire("m")).isEqualTo(Admission.PROBE);
+        assertThat(state("m")).isEqualTo(CircuitState.HALF_OPEN);
+        assertThat(tracker.tryAcquire("m")).isEqualTo(Admission.REJECTED);
+
+        // A trial call that ends without an outcome frees its place for another one
+        tracker.release("m", Admission.PROBE);
+        assertThat(tracker.tryAcquire("m")).isEqualTo(Admission.PROBE);
+    }
+
+    @Test
+    void successfulTrialCallClosesTheCircuit() throws InterruptedException {
+        open("m");
+        Thread.sleep(80);
+        Admission probe = tracker.tryAcquire("m");
+
+        tracker.recordSuccess("m", SECOND, true);
+        tracker.release("m", probe);
+
+        assertThat(state("m")).isEqualTo(CircuitState.CLOSED);
+        assertThat(tracker.tryAcquire("m")).isEqualTo(Admission.ALLOWED);
+        assertThat(tracker.statuses().get("m").consecutiveFailures()).isZero();
+    }
+
+    @Test
+    void failedTrialCallReopensTheCircuitRightAway() throws InterruptedException {
+        open("m");
+        Thread.sleep(80);
+        Admission probe = tracker.tryAcquire("m");
+
+        tracker.recordFailure("m");
+        tracker.release("m", probe);
+
+        assertThat(state("m")).isEqualTo(CircuitState.OPEN);
+        assertThat(tracker.tryAcquire("m")).isEqualTo(Admission.REJECTED);
+        assertThat(meterRegistry.counter("openrouter.model.circuit.transitions", "model", "m", "state", "OPEN").count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void healthiestSkipsOpenCircuitsAndPrefersFasterModels() {
+        tracker.recordSuccess("slow", 4 * SECOND, false);
+        tracker.recordSuccess("fast", SECOND / 2, false);
+        open("broken");
+
+        assertThat(tracker.healthiest(List.of("slow", "broken", "fast"))).contains("fast");
+        assertThat(tracker.healthiest(List.of("broken"))).isEmpty();
+    }
+
+    private void open(String model) {
+        for (int i = 0; i < properties.getRouting().getFailureThreshold(); i++) {
+            tracker.recordFailure(model);
+        }
+        assertThat(state(model)).isEqualTo(CircuitState.OPEN);
+    }
+
+    private CircuitState state(String model) {
+        return tracker.statuses().get(model).state();
+    }
+}
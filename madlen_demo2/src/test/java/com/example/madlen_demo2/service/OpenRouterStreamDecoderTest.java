@@ -0,0 +1,183 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.dto.OpenRouterDtos.StreamEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenRouterStreamDecoderTest {
+
+    @Test
+    void extractsDeltaContentFromEachEvent() {
+        String body = chunk("Hello") + chunk(", ") + chunk("world") + "data: [DONE]\n\n";
+
+        assertThat(contentOf(decode(body))).isEqualTo("Hello, world");
+    }
+
+    @Test
+    void decodesJsonEscapes() {
+        String json = "line\\nbreak\\ttab \\\"quoted\\\" slash\\/ back\\\\slash \\u00e9 \\ud83d\\ude00";
+
+        List<StreamEvent> events = decode(rawChunk(json));
+
+        assertThat(contentOf(events)).isEqualTo("line\nbreak\ttab \"quoted\" slash/ back\\slash é 😀");
+    }
+
+    @Test
+    void handlesContentEndingInEscapedBackslash() {
+        // The closing quote follows an escaped backslash, not an escaped quote
+        List<StreamEvent> events = decode(rawChunk("C:\\\\") + rawChunk("next"));
+
+        assertThat(events).extracting(StreamEvent::getContent).containsExactly("C:\\", "next");
+    }
+
+    @Test
+    void reassemblesMultiByteCharactersSplitAcrossFrames() {
+        String text = "Merhaba dünya, çğıöşü 😀 你好";
+        byte[] body = chunk(text).getBytes(StandardCharsets.UTF_8);
+
+        // Try every split point, including inside each multi-byte sequence
+        for (int split = 1; split < body.length; split++) {
+            List<StreamEvent> events = decode(
+                    Arrays.copyOfRange(body, 0, split),
+                    Arrays.copyOfRange(body, split, body.length));
+            assertThat(contentOf(events)).as("split at %d", split).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void decodesStreamDeliveredOneByteAtATime() {
+        String body = chunk("ça") + chunk("\\u00e7a va") + finishChunk("stop");
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        byte[][] frames = new byte[bytes.length][];
+        for (int i = 0; i < bytes.length; i++) {
+            frames[i] = new byte[]{bytes[i]};
+        }
+
+        List<StreamEvent> events = decode(frames);
+
+        assertThat(contentOf(events)).isEqualTo("çaça va");
+        assertThat(events.get(events.size() - 1).getFinishReason()).isEqualTo("stop");
+    }
+
+    @Test
+    void ignoresCommentsDoneMarkerAndCarriageReturns() {
+        String body = ": OPENROUTER PROCESSING\r\n\r\n"
+                + chunk("a").replace("\n", "\r\n")
+                + "event: message\n"
+                + chunk("b")
+                + "data: [DONE]\r\n\r\n";
+
+        assertThat(contentOf(decode(body))).isEqualTo("ab");
+    }
+
+    @Test
+    void extractsFinishReasonAndUsage() {
+        String body = chunk("Hi")
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"length\"}],"
+                + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":34,\"total_tokens\":46}}\n\n";
+
+        List<StreamEvent> events = decode(body);
+
+        StreamEvent last = events.get(events.size() - 1);
+        assertThat(last.getFinishReason()).isEqualTo("length");
+        assertThat(last.getUsage().getPromptTokens()).isEqualTo(12);
+        assertThat(last.getUsage().getCompletionTokens()).isEqualTo(34);
+        assertThat(last.getUsage().getTotalTokens()).isEqualTo(46);
+    }
+
+    @Test
+    void skipsRoleOnlyAndNullContentDeltas() {
+        String body = "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":null}}]}\n\n"
+                + chunk("text");
+
+        List<StreamEvent> events = decode(body);
+
+        assertThat(events).extracting(StreamEvent::getContent).containsExactly("text");
+    }
+
+    @Test
+    void ignoresContentOutsideTheDeltaObject() {
+        String body = "data: {\"model\":\"x\",\"content\":\"not me\",\"choices\":[{\"delta\":{\"content\":\"me\"},"
+                + "\"message\":{\"content\":\"nor me\"}}]}\n\n";
+
+        assertThat(contentOf(decode(body))).isEqualTo("me");
+    }
+
+    @Test
+    void reportsUpstreamErrors() {
+        String body = "data: {\"error\":{\"message\":\"Rate limit exceeded\",\"code\":429}}\n\n";
+
+        List<StreamEvent> events = decode(body);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getErrorMessage()).isEqualTo("Rate limit exceeded");
+    }
+
+    @Test
+    void recoversAfterMalformedEvent() {
+        String body = "data: {\"choices\":[{\"delta\":{\"content\":\"bro\n\n" + chunk("ok");
+
+        assertThat(contentOf(decode(body))).isEqualTo("ok");
+    }
+
+    @Test
+    void joinsJsonSpanningSeveralDataLinesOfOneEvent() {
+        String body = "data: {\"choices\":[{\"delta\":\n"
+                + "data: {\"content\":\"joined\"}}]}\n\n";
+
+        assertThat(contentOf(decode(body))).isEqualTo("joined");
+    }
+
+    @Test
+    void flushesFinalLineWithoutTrailingNewline() {
+        String body = chunk("first") + "data: " + json("last");
+
+        assertThat(contentOf(decode(body))).isEqualTo("firstlast");
+    }
+
+    private static String chunk(String content) {
+        return "data: " + json(content) + "\n\n";
+    }
+
+    private static String rawChunk(String escapedContent) {
+        return "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + escapedContent + "\"}}]}\n\n";
+    }
+
+    private static String finishChunk(String reason) {
+        return "data: {\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"" + reason + "\"}]}\n\n";
+    }
+
+    private static String json(String content) {
+        return "{\"id\":\"gen-1\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\""
+                + content + "\"},\"finish_reason\":null}]}";
+    }
+
+    private static String contentOf(List<StreamEvent> events) {
+        return events.stream()
+                .map(StreamEvent::getContent)
+                .filter(c -> c != null)
+                .collect(Collectors.joining());
+    }
+
+    private static List<StreamEvent> decode(String body) {
+        return decode(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<StreamEvent> decode(byte[]... frames) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (byte[] frame : frames) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(frame));
+        }
+        return OpenRouterStreamDecoder.decode(Flux.fromIterable(buffers)).collectList().block();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.ChatProperties;
+import com.example.madlen_demo2.exception.ChatExceptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionTurnLocksTest {
+
+    private ChatProperties properties;
+    private SessionTurnLocks locks;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ChatProperties();
+        properties.getTurns().setAcquireTimeout(Duration.ofSeconds(5));
+        locks = new SessionTurnLocks(properties, new SimpleMeterRegistry());
+        locks.init();
+    }
+
+    @Test
+    void runsTurnsOfOneSessionInArrivalOrder() {
+        Sinks.Empty<Void> first = Sinks.empty();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        locks.withLock("s1", first.asMono().thenMany(Flux.just("first"))).subscribe(order::add);
+        locks.withLock("s1", Flux.just("second")).subscribe(order::add);
+        locks.withLock("s1", Flux.just("third")).subscribe(order::add);
+        assertThat(order).isEmpty();
+
+        first.tryEmitEmpty();
+
+        assertThat(order).containsExactly("first", "second", "third");
+        assertThat(locks.activeLocks()).isZero();
+    }
+
+    @Test
+    void otherSessionsDoNotWaitForARunningTurn() {
+        Sinks.Empty<Void> running = Sinks.empty();
+        locks.withLock("s1", running.asMono().thenMany(Flux.just("s1"))).subscribe();
+
+        assertThat(locks.withLock("s2", () -> "s2")).isEqualTo("s2");
+        assertThat(locks.activeLocks()).isEqualTo(1);
+
+        running.tryEmitEmpty();
+        assertThat(locks.activeLocks()).isZero();
+    }
+
+    @Test
+    void waiterTimesOutWithSessionBusy() {
+        properties.getTurns().setAcquireTimeout(Duration.ofMillis(50));
+        Sinks.Empty<Void> running = Sinks.empty();
+        locks.withLock("s1", running.asMono().thenMany(Flux.just("s1"))).subscribe();
+
+        assertThatThrownBy(() -> locks.withLock("s1", () -> "late"))
+                .isInstanceOf(ChatExceptions.SessionBusyException.class);
+
+        // The timed-out waiter left the queue, so the next turn gets the lock right after the first
+        running.tryEmitEmpty();
+        assertThat(locks.withLock("s1", () -> "next")).isEqualTo("next");
+        assertThat(locks.activeLocks()).isZero();
+    }
+
+    @Test
+    void releasesOnError() {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        locks.withLock("s1", Flux.<String>error(new IllegalStateException("boom"))).subscribe(v -> { }, failure::set);
+
+        assertThat(failure.get()).hasMessage("boom");
+        assertThat(locks.withLock("s1", () -> "after")).isEqualTo("after");
+        assertThat(locks.activeLocks()).isZero();
+    }
+
+    @Test
+    void releasesWhenTheHolderIsCancelled() {
+        Disposable holder = locks.withLock("s1", Flux.<String>never()).subscribe();
+        List<String> order = new CopyOnWriteArrayList<>();
+        locks.withLock("s1", Flux.just("waiter")).subscribe(order::add);
+        assertThat(order).isEmpty();
+
+        holder.dispose();
+
+        assertThat(order).containsExactly("waiter");
+        assertThat(locks.activeLocks()).isZero();
+    }
+
+    @Test
+    void cancelCleanupRunsBeforeTheNextTurn() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        Disposable holder = locks.withLock("s1", Flux.<String>never(),
+                Mono.<Void>fromRunnable(() -> order.add("cleanup")).delaySubscription(Duration.ofMillis(50))).subscribe();
+        locks.withLock("s1", Flux.just("next")).subscribe(order::add);
+
+        holder.dispose();
+
+        assertThat(locks.withLock("s1", () -> "after")).isEqualTo("after");
+        assertThat(order).containsExactly("cleanup", "next");
+    }
+
+    @Test
+    void grantRacingTheTimeoutNeverLosesTheLock() throws InterruptedException {
+        properties.getTurns().setAcquireTimeout(Duration.ofMillis(1));
+        for (int i = 0; i < 500; i++) {
+            Sinks.Empty<Void> running = Sinks.empty();
+            CountDownLatch holderDone = new CountDownLatch(1);
+            CountDownLatch waiterDone = new CountDownLatch(1);
+            locks.withLock("s1", running.asMono().thenMany(Flux.<String>empty()))
+                    .subscribe(v -> { }, e -> holderDone.countDown(), holderDone::countDown);
+            locks.withLock("s1", Flux.just("waiter"))
+                    .subscribe(v -> { }, e -> waiterDone.countDown(), waiterDone::countDown);
+
+            // Released from another thread right about when the waiter times out
+            Schedulers.parallel().schedule(running::tryEmitEmpty, 1, TimeUnit.MILLISECONDS);
+
+            assertThat(holderDone.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(waiterDone.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(locks.activeLocks()).isZero();
+        }
+    }
+
+    @Test
+    void cancelledWaiterIsSkipped() {
+        Sinks.Empty<Void> running = Sinks.empty();
+        List<String> order = new CopyOnWriteArrayList<>();
+        locks.withLock("s1", running.asMono().thenMany(Flux.just("first"))).subscribe(order::add);
+        Disposable gaveUp = locks.withLock("s1", Flux.just("gave up")).subscribe(order::add);
+        locks.withLock("s1", Flux.just("third")).subscribe(order::add);
+
+        gaveUp.dispose();
+        running.tryEmitEmpty();
+
+        assertThat(order).containsExactly("first", "third");
+        assertThat(locks.activeLocks()).isZero();
+    }
+}
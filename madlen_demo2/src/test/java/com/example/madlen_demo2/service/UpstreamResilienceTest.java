@@ -0,0 +1,120 @@
+package com.example.madlen_demo2.service;
+
+import com.example.madlen_demo2.config.OpenRouterProperties;
+import com.example.madlen_demo2.model.AIModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamResilienceTest {
+
+    private final OpenRouterProperties properties = new OpenRouterProperties();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private UpstreamResilience resilience;
+
+    @BeforeEach
+    void setUp() {
+        properties.getRetry().setInitialBackoff(Duration.ofMillis(1));
+        properties.getRetry().setMaxBackoff(Duration.ofMillis(5));
+        properties.setFallbacks(Map.of("primary", List.of("fallback")));
+
+        ModelRegistry modelRegistry = new ModelRegistry(properties, null, null, null);
+        modelRegistry.replace(List.of(
+                AIModel.builder().id("primary").name("primary").build(),
+                AIModel.builder().id("fallback").name("fallback").build()), "test");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        resilience = new UpstreamResilience(properties, modelRegistry, new ModelLatencyTracker(properties),
+                new ModelHealthTracker(properties, meterRegistry), meterRegistry);
+    }
+
+    @Test
+    void retriesATransientFailureBeforeTheFirstToken() {
+        Function<String, Flux<String>> call = counted(model -> calls(model) == 1
+                ? Flux.error(status(503))
+                : Flux.just("hello", " world"));
+
+        List<String> tokens = resilience.call("primary", false, true, call).collectList().block();
+
+        assertThat(tokens).containsExactly("hello", " world");
+        assertThat(calls("primary")).isEqualTo(2);
+        assertThat(calls("fallback")).isZero();
+    }
+
+    @Test
+    void fallsBackOnceRetriesAreExhausted() {
+        Function<String, Flux<String>> call = counted(model -> model.equals("primary")
+                ? Flux.error(status(503))
+                : Flux.just("from fallback"));
+
+        List<String> tokens = resilience.call("primary", false, true, call).collectList().block();
+
+        assertThat(tokens).containsExactly("from fallback");
+        assertThat(calls("primary")).isEqualTo(properties.getRetry().getMaxAttempts());
+    }
+
+    @Test
+    void neverRetriesOrFallsBackOnceTokensWereEmitted() {
+        Function<String, Flux<String>> call = counted(model -> Flux.concat(Flux.just("partial"), Flux.error(status(503))));
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        assertThatThrownBy(() -> resilience.call("primary", false, true, call).doOnNext(received::add).blockLast())
+                .isInstanceOf(WebClientResponseException.ServiceUnavailable.class);
+
+        assertThat(received).containsExactly("partial");
+        assertThat(calls("primary")).isEqualTo(1);
+        assertThat(calls("fallback")).isZero();
+    }
+
+    @Test
+    void hedgedStreamIsNotSwitchedAfterItsFirstToken() {
+        properties.getHedging().setEnabled(true);
+        Function<String, Flux<String>> call = counted(model -> Flux.concat(Flux.just("partial"), Flux.error(status(502))));
+
+        assertThatThrownBy(() -> resilience.call("primary", false, true, call).blockLast())
+                .isInstanceOf(WebClientResponseException.BadGateway.class);
+
+        assertThat(calls("primary")).isEqualTo(1);
+        assertThat(calls("fallback")).isZero();
+    }
+
+    @Test
+    void requestErrorsAreNeitherRetriedNorSentToFallbacks() {
+        Function<String, Flux<String>> call = counted(model -> Flux.error(status(400)));
+
+        assertThatThrownBy(() -> resilience.call("primary", false, true, call).blockLast())
+                .isInstanceOf(WebClientResponseException.BadRequest.class);
+
+        assertThat(calls("primary")).isEqualTo(1);
+        assertThat(calls("fallback")).isZero();
+    }
+
+    private Function<String, Flux<String>> counted(Function<String, Flux<String>> call) {
+        return model -> Flux.defer(() -> {
+            calls.computeIfAbsent(model, m -> new AtomicInteger()).incrementAndGet();
+            return call.apply(model);
+        });
+    }
+
+    private int calls(String model) {
+        AtomicInteger count = calls.get(model);
+        return count == null ? 0 : count.get();
+    }
+
+    private static WebClientResponseException status(int code) {
+        return WebClientResponseException.create(code, "upstream", HttpHeaders.EMPTY, new byte[0], null);
+    }
+}